@@ -1,8 +1,453 @@
 package org.amity;
 
-public class OMemory {
+import org.amity.concurrency.executors.PartitionSubmissionQueues;
+import org.amity.concurrency.factory.ThreadFactoryBuilder;
+import org.amity.storage.PageBatchException;
+import org.amity.storage.PageException;
+import org.amity.storage.StorageConfig;
+import org.amity.storage.StorageManager;
+import org.amity.storage.StorageManagerImpl;
 
-    //
-//    loadAllPartition();
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Producer client of the storage : records are packed into pages and pages are written in batches
+ * <p>
+ * A stream is a writer slot of the storage i.e. one of active partitions, records of a producer thread
+ * go to one stream so they are stored in send order.
+ * 1. a record is appended to open page of its stream, the page is sealed when next record does not fit
+ * or once its first record waited producerLingerMillis
+ * 2. sealed pages go through the admission queue of the stream, producers are throttled by queue depth
+ * and reader lag of the active partition
+ * 3. one sender per stream takes up to producerBatchPages sealed pages, allocates them in active partition
+ * of its slot (switching partition when full) and writes them with a single writePages call
+ * 4. future of a record completes with virtual page number of its page once the batch is written
+ * <p>
+ * Page : record count (2) | record length (2) | record bytes | record length (2) ... rest is zero,
+ * see {@link #records(ByteBuffer)}
+ */
+public class OMemory implements AutoCloseable {
+    public static final int MAX_RECORD_SIZE = StorageManager.PAGE_SIZE - 2 * Short.BYTES;
+    private static final String SENDER_THREAD = "op-thread";
+    // sender with nothing to write looks for records at least every ms
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // retry of a lingered page held by a throttled producer
+    private static final long RETRY_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final StorageManagerImpl storage;
+    private final int streams;
+    private final long lingerNanos;
+    private final int batchPages;
+    private final OpenPage[] openPages;
+    private final PartitionSubmissionQueues<SealedPage> sealedPages;
+    private final Thread[] senders;
+    private volatile boolean running = true;
+    private final LongAdder recordsSent = new LongAdder();
+    private final LongAdder pagesWritten = new LongAdder();
+    private final LongAdder batchesWritten = new LongAdder();
+
+    /**
+     * Page being filled by producers of a stream, guarded by its lock
+     */
+    private static final class OpenPage {
+        private final ReentrantLock lock = new ReentrantLock();
+        // held while a sealed page is queued, taken under page lock so pages are queued in seal order
+        private final ReentrantLock queueLock = new ReentrantLock();
+        private ByteBuffer page = newPage();
+        private List<CompletableFuture<Long>> futures = new ArrayList<>();
+        // read without lock by sender to time its wait, 0 if page has no record
+        private volatile long firstRecordNanos;
+
+        private boolean fits(int recordLength) {
+            return page.remaining() >= Short.BYTES + recordLength;
+        }
+
+        private void append(byte[] record, CompletableFuture<Long> future) {
+            if (futures.isEmpty()) {
+                firstRecordNanos = Math.max(1, System.nanoTime());
+            }
+            page.putShort((short) record.length).put(record);
+            futures.add(future);
+        }
+
+        private SealedPage seal() {
+            page.putShort(0, (short) futures.size());
+            SealedPage sealed = new SealedPage(page.array(), futures);
+            page = newPage();
+            futures = new ArrayList<>();
+            firstRecordNanos = 0;
+            return sealed;
+        }
+
+        private static ByteBuffer newPage() {
+            ByteBuffer page = ByteBuffer.allocate(StorageManager.PAGE_SIZE);
+            // record count is written on seal
+            page.position(Short.BYTES);
+            return page;
+        }
+    }
+
+    private static final class SealedPage {
+        private final byte[] page;
+        private final List<CompletableFuture<Long>> futures;
+
+        private SealedPage(byte[] page, List<CompletableFuture<Long>> futures) {
+            this.page = page;
+            this.futures = futures;
+        }
+    }
+
+    /**
+     * Start a sender per writer slot of storage, linger, batch and admission settings come from storage config
+     */
+    public OMemory(StorageManagerImpl storage) {
+        StorageConfig config = storage.getConfig();
+        this.storage = storage;
+        this.streams = StorageManager.MAX_WRITE_THREAD_ALLOWED;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(config.getProducerLingerMillis());
+        this.batchPages = config.getProducerBatchPages();
+        this.openPages = new OpenPage[streams];
+        for (int i = 0; i < streams; i++) {
+            this.openPages[i] = new OpenPage();
+        }
+        this.sealedPages = new PartitionSubmissionQueues<>(streams, config.getSubmissionQueueCapacity(),
+                config.getMaxReaderLagPages(), stream -> storage.readerLag(storage.activePartition(stream)),
+                TimeUnit.MILLISECONDS.toNanos(config.getReaderSleepMillis()));
+        ThreadFactory senderFactory = new ThreadFactoryBuilder()
+                .setNamePrefix(SENDER_THREAD)
+                .setDaemon(true)
+                .setUncaughtExceptionHandler((t, e) -> System.err.printf(
+                        "Thread %s threw exception - %s%n", t.getName(),
+                        e.getMessage())).build();
+        this.senders = new Thread[streams];
+        for (int i = 0; i < streams; i++) {
+            int stream = i;
+            this.senders[i] = senderFactory.newThread(() -> runSender(stream));
+            this.senders[i].start();
+        }
+    }
+
+    /**
+     * Send a record on stream of calling thread, see {@link #send(int, byte[])}
+     */
+    public CompletableFuture<Long> send(byte[] record) {
+        return send((int) (Thread.currentThread().getId() % streams), record);
+    }
+
+    /**
+     * Append a record to open page of stream, waits while the stream is throttled
+     *
+     * @param stream writer slot, 0 till MAX_WRITE_THREAD_ALLOWED - 1
+     * @param record at most MAX_RECORD_SIZE bytes, copied before return
+     * @return future completed with virtual page number of the page holding the record once it is written
+     */
+    public CompletableFuture<Long> send(int stream, byte[] record) {
+        if (record.length > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("record of " + record.length + " bytes is larger than "
+                    + MAX_RECORD_SIZE);
+        }
+        if (stream < 0 || stream >= streams) {
+            throw new IndexOutOfBoundsException("no stream " + stream + " of " + streams);
+        }
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        OpenPage open = this.openPages[stream];
+        SealedPage sealed = null;
+        open.lock.lock();
+        try {
+            // checked under page lock : a sender finding the page empty after close has stopped
+            if (!running) {
+                throw new IllegalStateException("producer is closed");
+            }
+            if (!open.fits(record.length)) {
+                sealed = open.seal();
+                open.queueLock.lock();
+            }
+            open.append(record, future);
+        } finally {
+            open.lock.unlock();
+        }
+        if (sealed != null) {
+            // throttled outside page lock, sender can still seal and write
+            queue(stream, sealed);
+        }
+        this.recordsSent.increment();
+        return future;
+    }
+
+    /**
+     * Queue a sealed page, waiting while stream is throttled. Call with queue lock of stream held, it is released.
+     * Page holds records of other producers too, so it is queued even if caller is interrupted.
+     */
+    private void queue(int stream, SealedPage sealed) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    this.sealedPages.put(stream, sealed);
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            this.openPages[stream].queueLock.unlock();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Seal open pages of all streams, their records are written without waiting for linger
+     */
+    public void flush() {
+        for (int stream = 0; stream < streams; stream++) {
+            OpenPage open = this.openPages[stream];
+            SealedPage sealed = null;
+            open.lock.lock();
+            try {
+                if (!open.futures.isEmpty()) {
+                    sealed = open.seal();
+                    open.queueLock.lock();
+                }
+            } finally {
+                open.lock.unlock();
+            }
+            if (sealed != null) {
+                queue(stream, sealed);
+            }
+        }
+    }
+
+    private void runSender(int stream) {
+        List<SealedPage> batch = new ArrayList<>();
+        while (running || hasPending(stream)) {
+            batch.clear();
+            long wait = lingerWait(stream);
+            try {
+                this.sealedPages.drainTo(stream, batch, batchPages, wait, TimeUnit.NANOSECONDS);
+                if (batch.size() < batchPages) {
+                    sealLingered(stream, batch);
+                }
+            } catch (InterruptedException e) {
+                // senders stop on close only, once pending records are written
+                System.err.println("sender of stream " + stream + " interrupted, going on");
+            }
+            if (!batch.isEmpty()) {
+                write(stream, batch);
+            } else if (wait == 0) {
+                LockSupport.parkNanos(this, RETRY_WAIT_NANOS);
+            }
+        }
+    }
+
+    /**
+     * @return time open page of stream may still wait for more records
+     */
+    private long lingerWait(int stream) {
+        long first = this.openPages[stream].firstRecordNanos;
+        if (first == 0) {
+            // a record may come any time
+            return Math.max(lingerNanos, IDLE_WAIT_NANOS);
+        }
+        return Math.max(0, lingerNanos - (System.nanoTime() - first));
+    }
+
+    /**
+     * Add open page of stream to batch if its first record waited linger time (or producer is closing)
+     */
+    private void sealLingered(int stream, List<SealedPage> batch) throws InterruptedException {
+        OpenPage open = this.openPages[stream];
+        // a producer holding the page is filling it
+        if (!open.lock.tryLock()) {
+            return;
+        }
+        try {
+            if (open.futures.isEmpty() || (running && System.nanoTime() - open.firstRecordNanos < lingerNanos)) {
+                return;
+            }
+            // a producer is queueing a page sealed before this one
+            if (!open.queueLock.tryLock()) {
+                return;
+            }
+            try {
+                // pages sealed before this one go first
+                this.sealedPages.drainTo(stream, batch, Integer.MAX_VALUE, 0, TimeUnit.NANOSECONDS);
+                batch.add(open.seal());
+            } finally {
+                open.queueLock.unlock();
+            }
+        } finally {
+            open.lock.unlock();
+        }
+    }
+
+    private boolean hasPending(int stream) {
+        OpenPage open = this.openPages[stream];
+        // a producer is appending or queueing, it may wait on this sender so sender never waits on it
+        if (open.queueLock.isLocked() || !open.lock.tryLock()) {
+            return true;
+        }
+        try {
+            return !open.futures.isEmpty() || this.sealedPages.depth(stream) > 0;
+        } finally {
+            open.lock.unlock();
+        }
+    }
+
+    /**
+     * Allocate pages of batch in active partition of stream and write them with one batch write
+     */
+    private void write(int stream, List<SealedPage> batch) {
+        List<Long> pages;
+        List<byte[]> bufs = new ArrayList<>(batch.size());
+        for (SealedPage sealed : batch) {
+            bufs.add(sealed.page);
+        }
+        try {
+            pages = allocate(stream, batch.size());
+        } catch (IOException | RuntimeException e) {
+            for (SealedPage sealed : batch) {
+                completeExceptionally(sealed, e);
+            }
+            return;
+        }
+        try {
+            // failed pages are abandoned by storage
+            this.storage.writePages(pages, bufs);
+        } catch (PageBatchException e) {
+            Map<Integer, RuntimeException> failures = e.getFailures();
+            for (int i = 0; i < batch.size(); i++) {
+                RuntimeException failure = failures.get(i);
+                if (failure != null) {
+                    completeExceptionally(batch.get(i), failure);
+                } else {
+                    complete(batch.get(i), pages.get(i));
+                }
+            }
+            return;
+        } catch (RuntimeException e) {
+            // batch did not run e.g. interrupted
+            abandonQuietly(pages);
+            for (SealedPage sealed : batch) {
+                completeExceptionally(sealed, e);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            complete(batch.get(i), pages.get(i));
+        }
+        this.batchesWritten.increment();
+    }
+
+    /**
+     * Allocate pages of a batch in active partition of stream without writing them, partition is switched
+     * once full. On failure pages allocated so far are abandoned.
+     *
+     * @return new pages in allocation order
+     */
+    private List<Long> allocate(int stream, int count) throws IOException {
+        List<Long> pages = new ArrayList<>(count);
+        try {
+            int partNum = this.storage.activePartition(stream);
+            boolean switched = false;
+            while (true) {
+                List<Long> allocated = this.storage.allocPages(partNum, count - pages.size());
+                pages.addAll(allocated);
+                if (pages.size() == count) {
+                    return pages;
+                }
+                if (allocated.isEmpty() && switched) {
+                    // partition switched to is full too
+                    throw new PageException("no free page in partition " + partNum + " of stream " + stream);
+                }
+                partNum = this.storage.switchPartition(partNum);
+                switched = true;
+            }
+        } catch (IOException | RuntimeException e) {
+            abandonQuietly(pages);
+            throw e;
+        }
+    }
+
+    private void abandonQuietly(List<Long> pages) {
+        try {
+            this.storage.abandonPages(pages);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("could not abandon pages " + pages + ": " + e.getMessage());
+        }
+    }
+
+    private void complete(SealedPage sealed, long page) {
+        this.pagesWritten.increment();
+        for (CompletableFuture<Long> future : sealed.futures) {
+            future.complete(page);
+        }
+    }
+
+    private static void completeExceptionally(SealedPage sealed, Exception e) {
+        for (CompletableFuture<Long> future : sealed.futures) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Records of a page written by a producer
+     *
+     * @param page PAGE_SIZE bytes from position, position is not changed
+     * @return records in send order
+     */
+    public static List<byte[]> records(ByteBuffer page) {
+        ByteBuffer src = page.duplicate();
+        int count = src.getShort();
+        List<byte[]> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] record = new byte[src.getShort()];
+            src.get(record);
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * @return records accepted by send
+     */
+    public long getRecordsSent() {
+        return recordsSent.sum();
+    }
+
+    /**
+     * @return pages written
+     */
+    public long getPagesWritten() {
+        return pagesWritten.sum();
+    }
+
+    /**
+     * @return writePages calls which wrote all pages of their batch
+     */
+    public long getBatchesWritten() {
+        return batchesWritten.sum();
+    }
+
+    /**
+     * Write every record sent so far and stop senders, storage stays open
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        for (Thread sender : senders) {
+            sender.join();
+        }
+    }
 }
@@ -1,15 +1,30 @@
 package org.amity.concurrency.error;
 
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 
 /**
- *
+ * Throttles the submitting thread till the pool queue has room instead of dropping the task,
+ * a task is rejected only once the pool is shut down
  */
 public class RejectedExecutionHandlerImpl implements RejectedExecutionHandler {
 
     @Override
     public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-        System.out.println(r.toString() + " is rejected");
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException(r.toString() + " is rejected, executor is shut down");
+        }
+        try {
+            // all threads busy and queue full, wait for a free queue slot
+            executor.getQueue().put(r);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(r.toString() + " is rejected, interrupted while waiting", e);
+        }
+        if (executor.isShutdown() && executor.remove(r)) {
+            // shut down while waiting, task would never run
+            throw new RejectedExecutionException(r.toString() + " is rejected, executor is shut down");
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,24 +1,229 @@
 package org.amity.concurrency.executors;
 
+import org.amity.concurrency.factory.ThreadFactoryBuilder;
+import org.amity.concurrency.factory.VirtualThreads;
+import org.amity.monitoring.PartitionsMonitorThread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs reader loops and client read requests
+ * <p>
+ * PLATFORM mode runs them on a fixed pool of platform threads, VIRTUAL mode starts a virtual thread
+ * per reader loop and per request.
+ * <p>
+ * Work stealing reader scheduler ({@link #startReaders}) : a few reader loops share all partitions
+ * with readable pages instead of one reader per partition.
+ * 1. reader i first takes its own partitions i.e. i-th, (i + readers)-th ... of readable partitions
+ * 2. when its own partitions have nothing to read it steals the unclaimed partition with largest backlog
+ * 3. a partition is claimed by one reader at a time and released after at most quantumPages pages,
+ * so its pages are read in order and never twice while a backlog is spread over all readers
+ * 4. a reader finding nothing to read parks idleNanos before next look
+ */
 public class PartitionReaderThreadExecutor implements ThreadExecutorPool {
 
+    private static final String PARTITION_READ_THREAD = "pr-thread";
+    private final int threadPoolSize;
+    private final Mode mode;
+    private ExecutorService executorPool;
+    /**
+     * partitions a reader loop is reading now
+     */
+    private final Set<Integer> claimed = ConcurrentHashMap.newKeySet();
+    private volatile boolean readersRunning;
+    private final LongAdder pagesRead = new LongAdder();
+    private final LongAdder stolenClaims = new LongAdder();
+
+    /**
+     * Partitions seen by reader scheduler
+     */
+    public interface PartitionReader {
+        /**
+         * @return partitions which may have readable pages
+         */
+        List<Integer> readablePartitions();
+
+        /**
+         * @return readable pages of partition not read yet, a hint to pick partition to steal
+         */
+        int backlog(int partitionNumber);
+
+        /**
+         * Read and commit readable pages of partition in page order, only one reader calls it at a time
+         *
+         * @return pages read
+         */
+        int readPages(int partitionNumber, int maxPages) throws Exception;
+    }
+
+    public PartitionReaderThreadExecutor(int threadPoolSize) {
+        this(threadPoolSize, Mode.PLATFORM);
+    }
+
+    public PartitionReaderThreadExecutor(int threadPoolSize, Mode mode) {
+        this.threadPoolSize = threadPoolSize;
+        this.mode = mode.supported();
+    }
+
     @Override
     public void initExecutorPool() {
-        
+        if (mode == Mode.VIRTUAL) {
+            executorPool = VirtualThreads.newThreadPerTaskExecutor(PARTITION_READ_THREAD);
+            return;
+        }
+        executorPool = new ThreadPoolExecutor(
+                threadPoolSize, threadPoolSize, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+                .setNamePrefix(PARTITION_READ_THREAD)
+                .setDaemon(false)
+                .setUncaughtExceptionHandler((t, e) -> System.err.printf(
+                        "Thread %s threw exception - %s%n", t.getName(),
+                        e.getMessage())).build());
+
+        // start monitor thread
+        startMonitorThread();
+    }
+
+    /**
+     * Start work stealing reader loops, in PLATFORM mode each loop holds a pool thread
+     *
+     * @param reader       readable partitions and page reading
+     * @param readers      reader loops
+     * @param quantumPages pages read from a partition before reader looks at other partitions
+     * @param idleNanos    park of a reader which found nothing to read
+     */
+    public void startReaders(PartitionReader reader, int readers, int quantumPages, long idleNanos) {
+        if (readers <= 0 || quantumPages <= 0) {
+            throw new IllegalArgumentException("readers and quantum pages should be positive : " + readers
+                    + ", " + quantumPages);
+        }
+        readersRunning = true;
+        for (int i = 0; i < readers; i++) {
+            int id = i;
+            executorPool.execute(() -> runReader(reader, id, readers, quantumPages, idleNanos));
+        }
+    }
+
+    private void runReader(PartitionReader reader, int id, int readers, int quantumPages, long idleNanos) {
+        while (readersRunning && !Thread.currentThread().isInterrupted()) {
+            List<Integer> partitions = reader.readablePartitions();
+            int read = 0;
+            for (int k = id; k < partitions.size(); k += readers) {
+                read += readClaimed(reader, partitions.get(k), quantumPages);
+            }
+            if (read == 0) {
+                read = steal(reader, partitions, quantumPages);
+            }
+            if (read == 0) {
+                LockSupport.parkNanos(this, idleNanos);
+            }
+        }
+    }
+
+    /**
+     * Read the unclaimed partition with largest backlog
+     */
+    private int steal(PartitionReader reader, List<Integer> partitions, int quantumPages) {
+        List<Integer> candidates = new ArrayList<>(partitions);
+        candidates.removeIf(claimed::contains);
+        int busiest = -1;
+        int busiestBacklog = 0;
+        for (int partitionNumber : candidates) {
+            int backlog = reader.backlog(partitionNumber);
+            if (backlog > busiestBacklog) {
+                busiest = partitionNumber;
+                busiestBacklog = backlog;
+            }
+        }
+        if (busiest < 0) {
+            return 0;
+        }
+        int read = readClaimed(reader, busiest, quantumPages);
+        if (read > 0) {
+            stolenClaims.increment();
+        }
+        return read;
+    }
+
+    private int readClaimed(PartitionReader reader, int partitionNumber, int quantumPages) {
+        if (!claimed.add(partitionNumber)) {
+            // another reader is on it
+            return 0;
+        }
+        try {
+            int read = reader.readPages(partitionNumber, quantumPages);
+            pagesRead.add(read);
+            return read;
+        } catch (Exception e) {
+            // page is not committed, it is read again on next claim
+            System.err.println("could not read partition " + partitionNumber + ": " + e.getMessage());
+            return 0;
+        } finally {
+            claimed.remove(partitionNumber);
+        }
+    }
+
+    /**
+     * @return pages read by reader loops
+     */
+    public long getPagesRead() {
+        return pagesRead.sum();
+    }
+
+    /**
+     * @return claims of a partition which was not own partition of the reader and had pages to read
+     */
+    public long getStolenClaims() {
+        return stolenClaims.sum();
+    }
+
+    /**
+     * Start reader loop of a partition, it runs till it returns or executor is shut down
+     */
+    public Future<?> startPartitionReader(Runnable reader) {
+        return executorPool.submit(reader);
+    }
+
+    /**
+     * Run a client read request, on its own virtual thread in VIRTUAL mode
+     */
+    public <T> Future<T> submit(Callable<T> request) {
+        return executorPool.submit(request);
     }
 
     @Override
     public void startMonitorThread() {
+        PartitionsMonitorThread monitor = new PartitionsMonitorThread((ThreadPoolExecutor) executorPool, 3);
+        Thread monitorThread = new Thread(monitor);
+        // make it daemon to continuously running in background
+        monitorThread.setDaemon(true);
+        monitorThread.start();
+    }
 
+    public Mode getMode() {
+        return mode;
     }
 
     @Override
     public int getType() {
-        return 0;
+        return 1;
     }
 
     @Override
     public void shutdown() {
-
+        readersRunning = false;
+        // reader loops wait for readable pages, interrupt them
+        executorPool.shutdownNow();
     }
 }
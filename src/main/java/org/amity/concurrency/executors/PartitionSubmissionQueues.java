@@ -0,0 +1,228 @@
+package org.amity.concurrency.executors;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Admission of producer submissions : one bounded queue per partition, drained by the partition writer
+ * <p>
+ * A submission is admitted only while its partition queue has room and readers of the partition
+ * are not too far behind (reader lag i.e. readable pages not read yet), otherwise producer is throttled :
+ * 1. {@link #put} waits till admitted, {@link #offer(int, Object, long, TimeUnit)} waits at most timeout,
+ * {@link #offer(int, Object)} does not wait, nothing admitted is ever dropped
+ * 2. a producer waiting on a full queue is woken by the writer draining it, a producer waiting on
+ * reader lag re-checks lag every lagPollNanos as readers do not signal this queue
+ * 3. writer drains a whole batch per lock, so admission costs one lock per submission and one per batch
+ */
+public class PartitionSubmissionQueues<T> {
+
+    private final PartitionQueue<T>[] queues;
+    private final int capacity;
+    private final long maxReaderLag;
+    private final IntToLongFunction readerLag;
+    private final long lagPollNanos;
+    private final LongAdder throttledNanos = new LongAdder();
+    private final LongAdder rejectedOffers = new LongAdder();
+
+    private static final class PartitionQueue<T> {
+        private final ArrayDeque<T> items = new ArrayDeque<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+        private final Condition notEmpty = lock.newCondition();
+    }
+
+    /**
+     * @param partitions   partition numbers are 0 till partitions - 1
+     * @param capacity     submissions queued per partition
+     * @param maxReaderLag readable pages not read yet of a partition above which producers are throttled,
+     *                     0 to ignore reader lag
+     * @param readerLag    reader lag of a partition
+     * @param lagPollNanos interval a producer throttled by reader lag checks it again
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PartitionSubmissionQueues(int partitions, int capacity, long maxReaderLag, IntToLongFunction readerLag,
+                                     long lagPollNanos) {
+        if (partitions <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("partitions and capacity should be positive : " + partitions + ", "
+                    + capacity);
+        }
+        this.queues = new PartitionQueue[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.queues[i] = new PartitionQueue<>();
+        }
+        this.capacity = capacity;
+        this.maxReaderLag = maxReaderLag;
+        this.readerLag = readerLag;
+        this.lagPollNanos = lagPollNanos;
+    }
+
+    /**
+     * Queue submission, waiting as long as partition is throttled
+     */
+    public void put(int partition, T item) throws InterruptedException {
+        admit(partition, item, Long.MAX_VALUE);
+    }
+
+    /**
+     * Queue submission, waiting at most timeout while partition is throttled
+     *
+     * @return false if still throttled after timeout, item is not queued
+     */
+    public boolean offer(int partition, T item, long timeout, TimeUnit unit) throws InterruptedException {
+        return admit(partition, item, unit.toNanos(timeout));
+    }
+
+    /**
+     * Queue submission if partition is not throttled
+     *
+     * @return false if throttled, item is not queued
+     */
+    public boolean offer(int partition, T item) {
+        try {
+            return admit(partition, item, 0);
+        } catch (InterruptedException e) {
+            // does not wait
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean admit(int partition, T item, long timeoutNanos) throws InterruptedException {
+        if (item == null) {
+            throw new NullPointerException("submission cannot be null");
+        }
+        PartitionQueue<T> queue = queue(partition);
+        long start = 0;
+        queue.lock.lockInterruptibly();
+        try {
+            while (true) {
+                boolean full = queue.items.size() >= this.capacity;
+                if (!full && !isLagging(partition)) {
+                    queue.items.add(item);
+                    queue.notEmpty.signal();
+                    return true;
+                }
+                long now = System.nanoTime();
+                if (start == 0) {
+                    start = now;
+                }
+                long remaining = timeoutNanos == Long.MAX_VALUE ? Long.MAX_VALUE : timeoutNanos - (now - start);
+                if (remaining <= 0) {
+                    this.rejectedOffers.increment();
+                    return false;
+                }
+                // a full queue is signalled by writer, reader lag is polled
+                queue.notFull.awaitNanos(full ? remaining : Math.min(remaining, this.lagPollNanos));
+            }
+        } finally {
+            queue.lock.unlock();
+            if (start != 0) {
+                this.throttledNanos.add(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Move queued submissions of partition to batch, waiting till at least one is queued
+     *
+     * @return submissions moved
+     */
+    public int drainTo(int partition, Collection<? super T> batch, int maxItems) throws InterruptedException {
+        PartitionQueue<T> queue = queue(partition);
+        queue.lock.lockInterruptibly();
+        try {
+            while (queue.items.isEmpty()) {
+                queue.notEmpty.await();
+            }
+            return drain(queue, batch, maxItems);
+        } finally {
+            queue.lock.unlock();
+        }
+    }
+
+    /**
+     * Move queued submissions of partition to batch, waiting at most timeout till one is queued
+     *
+     * @return submissions moved, 0 on timeout
+     */
+    public int drainTo(int partition, Collection<? super T> batch, int maxItems, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        PartitionQueue<T> queue = queue(partition);
+        long remaining = unit.toNanos(timeout);
+        queue.lock.lockInterruptibly();
+        try {
+            while (queue.items.isEmpty()) {
+                if (remaining <= 0) {
+                    return 0;
+                }
+                remaining = queue.notEmpty.awaitNanos(remaining);
+            }
+            return drain(queue, batch, maxItems);
+        } finally {
+            queue.lock.unlock();
+        }
+    }
+
+    // call with queue lock held
+    private int drain(PartitionQueue<T> queue, Collection<? super T> batch, int maxItems) {
+        int moved = 0;
+        while (moved < maxItems && !queue.items.isEmpty()) {
+            batch.add(queue.items.poll());
+            moved++;
+        }
+        if (moved > 0) {
+            queue.notFull.signalAll();
+        }
+        return moved;
+    }
+
+    /**
+     * @return true if a submission to partition would wait now (queue full or readers lagging)
+     */
+    public boolean isThrottled(int partition) {
+        return depth(partition) >= this.capacity || isLagging(partition);
+    }
+
+    /**
+     * @return queued submissions of partition
+     */
+    public int depth(int partition) {
+        PartitionQueue<T> queue = queue(partition);
+        queue.lock.lock();
+        try {
+            return queue.items.size();
+        } finally {
+            queue.lock.unlock();
+        }
+    }
+
+    /**
+     * @return total time producers waited to be admitted
+     */
+    public long getThrottledNanos() {
+        return this.throttledNanos.sum();
+    }
+
+    /**
+     * @return offers which timed out or were refused without waiting
+     */
+    public long getRejectedOffers() {
+        return this.rejectedOffers.sum();
+    }
+
+    private boolean isLagging(int partition) {
+        return this.maxReaderLag > 0 && this.readerLag.applyAsLong(partition) >= this.maxReaderLag;
+    }
+
+    private PartitionQueue<T> queue(int partition) {
+        if (partition < 0 || partition >= this.queues.length) {
+            throw new IndexOutOfBoundsException("no submission queue for partition " + partition);
+        }
+        return this.queues[partition];
+    }
+}
@@ -2,6 +2,7 @@ package org.amity.concurrency.executors;
 
 import org.amity.concurrency.error.RejectedExecutionHandlerImpl;
 import org.amity.concurrency.factory.ThreadFactoryBuilder;
+import org.amity.concurrency.factory.VirtualThreads;
 import org.amity.concurrency.worker.WorkerThread;
 import org.amity.monitoring.PartitionsMonitorThread;
 
@@ -9,23 +10,47 @@ import java.util.Map;
 import java.util.concurrent.*;
 
 /**
- *
+ * Runs one worker per partition writer and client write requests
+ * <p>
+ * PLATFORM mode sizes a pool of platform threads, VIRTUAL mode starts a virtual thread per partition
+ * worker and per request so the number of partitions and blocked writes is not bounded by the pool.
  */
 public class PartitionWriterThreadExecutor implements ThreadExecutorPool {
 
     // we can adjust thread pool size dynamically
     private static final String PARTITION_WRITE_THREAD = "pw-thread";
-    private static ThreadPoolExecutor executorPool;
+    private ExecutorService executorPool;
     private final int threadPoolSize;
+    private final Mode mode;
+    // tasks waiting for a pool thread before submitters are throttled
+    private final int queueCapacity;
     Map<String, Integer> threadNameToPartition;
 
     public PartitionWriterThreadExecutor(int threadPoolSize) {
+        this(threadPoolSize, Mode.PLATFORM);
+    }
+
+    public PartitionWriterThreadExecutor(int threadPoolSize, Mode mode) {
+        this(threadPoolSize, mode, 2);
+    }
+
+    public PartitionWriterThreadExecutor(int threadPoolSize, Mode mode, int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queue capacity should be positive : " + queueCapacity);
+        }
         this.threadPoolSize = threadPoolSize;
+        this.mode = mode.supported();
+        this.queueCapacity = queueCapacity;
         this.threadNameToPartition = new ConcurrentHashMap<>();
     }
 
     public void initExecutorPool() {
-        //RejectedExecutionHandler implementation
+        if (mode == Mode.VIRTUAL) {
+            executorPool = VirtualThreads.newThreadPerTaskExecutor(PARTITION_WRITE_THREAD);
+            startWorkers();
+            return;
+        }
+        //RejectedExecutionHandler implementation, throttles submitter when pool and queue are full
         RejectedExecutionHandlerImpl rejectionHandler = new RejectedExecutionHandlerImpl();
         //Get the ThreadFactory implementation to use
 //        ThreadFactory threadFactory = Executors.defaultThreadFactory();
@@ -40,11 +65,15 @@ public class PartitionWriterThreadExecutor implements ThreadExecutorPool {
         //creating the ThreadPoolExecutor
         executorPool = new ThreadPoolExecutor(
                 2, threadPoolSize, 10, TimeUnit.SECONDS,
-                new ArrayBlockingQueue<>(2), customThreadfactory, rejectionHandler);
+                new ArrayBlockingQueue<>(queueCapacity), customThreadfactory, rejectionHandler);
 
         // start monitor thread
         startMonitorThread();
 
+        startWorkers();
+    }
+
+    private void startWorkers() {
         //submit work to the thread pool
         for (int i = 0; i < threadPoolSize - 1; i++) {
             threadNameToPartition.putIfAbsent(PARTITION_WRITE_THREAD + "-" + i, i);
@@ -52,12 +81,18 @@ public class PartitionWriterThreadExecutor implements ThreadExecutorPool {
         }
     }
 
+    /**
+     * Run a client write request, on its own virtual thread in VIRTUAL mode
+     */
+    public <T> Future<T> submit(Callable<T> request) {
+        return executorPool.submit(request);
+    }
 
     @Override
     public void startMonitorThread() {
 
         //start the monitoring thread
-        PartitionsMonitorThread monitor = new PartitionsMonitorThread(executorPool, 3);
+        PartitionsMonitorThread monitor = new PartitionsMonitorThread((ThreadPoolExecutor) executorPool, 3);
         Thread monitorThread = new Thread(monitor);
         // make it daemon to continuously running in background
         monitorThread.setDaemon(true);
@@ -72,6 +107,10 @@ public class PartitionWriterThreadExecutor implements ThreadExecutorPool {
 //        monitor.shutdown();
     }
 
+    public Mode getMode() {
+        return mode;
+    }
+
     @Override
     public int getType() {
         return 0;
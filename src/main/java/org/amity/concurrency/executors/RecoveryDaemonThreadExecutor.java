@@ -1,24 +1,95 @@
 package org.amity.concurrency.executors;
 
+import org.amity.concurrency.error.DatabaseException;
+import org.amity.concurrency.factory.ThreadFactoryBuilder;
+import org.amity.monitoring.PartitionsMonitorThread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs startup recovery of partitions in parallel, one task per partition
+ */
 public class RecoveryDaemonThreadExecutor implements ThreadExecutorPool {
 
+    private static final String RECOVERY_THREAD = "rc-thread";
+    private final int threadPoolSize;
+    private ThreadPoolExecutor executorPool;
+    private PartitionsMonitorThread monitor;
+
+    public RecoveryDaemonThreadExecutor(int threadPoolSize) {
+        this.threadPoolSize = threadPoolSize;
+    }
+
     @Override
     public void initExecutorPool() {
+        executorPool = new ThreadPoolExecutor(
+                threadPoolSize, threadPoolSize, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+                .setNamePrefix(RECOVERY_THREAD)
+                .setDaemon(true)
+                .setUncaughtExceptionHandler((t, e) -> System.err.printf(
+                        "Thread %s threw exception - %s%n", t.getName(),
+                        e.getMessage())).build());
 
+        // start monitor thread
+        startMonitorThread();
     }
 
     @Override
     public void startMonitorThread() {
+        monitor = new PartitionsMonitorThread(executorPool, 3);
+        Thread monitorThread = new Thread(monitor);
+        // make it daemon to continuously running in background
+        monitorThread.setDaemon(true);
+        monitorThread.start();
+    }
 
+    /**
+     * Run recovery task of each partition in parallel and wait for all of them
+     *
+     * @param partitionTasks partition number to its recovery task
+     * @throws DatabaseException if any partition failed to recover, after all tasks are done
+     */
+    public void recover(Map<Integer, Callable<Void>> partitionTasks) {
+        List<Integer> partitions = new ArrayList<>(partitionTasks.keySet());
+        List<Future<Void>> running = new ArrayList<>(partitions.size());
+        for (int partition : partitions) {
+            running.add(executorPool.submit(partitionTasks.get(partition)));
+        }
+        List<String> failures = new ArrayList<>();
+        for (int i = 0; i < running.size(); i++) {
+            try {
+                running.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DatabaseException(e);
+            } catch (ExecutionException e) {
+                failures.add(partitions.get(i) + ": " + e.getCause().getMessage());
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new DatabaseException("could not recover partitions " + failures);
+        }
     }
 
     @Override
     public int getType() {
-        return 0;
+        return 3;
     }
 
     @Override
     public void shutdown() {
-
+        if (monitor != null) {
+            monitor.shutdown();
+        }
+        executorPool.shutdown();
     }
 }
@@ -1,10 +1,37 @@
 package org.amity.concurrency.executors;
 
+import org.amity.concurrency.factory.VirtualThreads;
+
 /**
  *
  */
 public interface ThreadExecutorPool {
 
+    /**
+     * Threads running partition workers and client requests
+     */
+    enum Mode {
+        /**
+         * bounded pools of platform threads
+         */
+        PLATFORM,
+        /**
+         * one virtual thread per partition worker and per client request, needs Java 21
+         */
+        VIRTUAL;
+
+        /**
+         * @return mode usable on running JDK, VIRTUAL falls back to PLATFORM before Java 21
+         */
+        public Mode supported() {
+            if (this == VIRTUAL && !VirtualThreads.isSupported()) {
+                System.err.println("virtual threads need Java 21 or later, using platform threads");
+                return PLATFORM;
+            }
+            return this;
+        }
+    }
+
     /**
      * initialize executor with thread pool size and also start monitor
      */
@@ -20,6 +47,7 @@ public interface ThreadExecutorPool {
      * 0- for write
      * 1- for read
      * 2- for monitor
+     * 3- for recovery
      *
      * @return thread executor pool type type
      */
@@ -0,0 +1,46 @@
+package org.amity.concurrency.factory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads of the running JDK
+ * <p>
+ * Jar is multi-release : this class is used on Java 11 till 20 where there are no virtual threads,
+ * META-INF/versions/21 holds the same class backed by virtual threads (source in src/main/java21).
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if running JDK has virtual threads
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * @return true if thread is a virtual thread
+     */
+    public static boolean isVirtual(Thread thread) {
+        return false;
+    }
+
+    /**
+     * @param namePrefix thread names are namePrefix-0, namePrefix-1 ...
+     * @return factory of virtual threads
+     */
+    public static ThreadFactory factory(String namePrefix) {
+        throw new UnsupportedOperationException("virtual threads need Java 21 or later");
+    }
+
+    /**
+     * @param namePrefix thread names are namePrefix-0, namePrefix-1 ...
+     * @return executor starting a new virtual thread for each task
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        throw new UnsupportedOperationException("virtual threads need Java 21 or later");
+    }
+}
@@ -0,0 +1,28 @@
+package org.amity.concurrency.wait;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Spin on condition, signal is not needed
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+
+    @Override
+    public boolean await(BooleanSupplier condition, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (!condition.getAsBoolean()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+        return true;
+    }
+
+    @Override
+    public void signalAll() {
+    }
+}
@@ -0,0 +1,52 @@
+package org.amity.concurrency.wait;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Park until signalled
+ * <p>
+ * Waiter registers itself before checking condition, so a signal after the check
+ * unparks it (or makes its next park return at once) and no wake up is lost.
+ * Signal with no waiter is a single empty queue check.
+ */
+public class ParkWaitStrategy implements WaitStrategy {
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public boolean await(BooleanSupplier condition, long timeoutNanos) throws InterruptedException {
+        if (condition.getAsBoolean()) {
+            return true;
+        }
+        long deadline = System.nanoTime() + timeoutNanos;
+        Thread current = Thread.currentThread();
+        waiters.add(current);
+        try {
+            while (!condition.getAsBoolean()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return true;
+        } finally {
+            waiters.remove(current);
+        }
+    }
+
+    @Override
+    public void signalAll() {
+        if (waiters.isEmpty()) {
+            return;
+        }
+        for (Thread waiter : waiters) {
+            LockSupport.unpark(waiter);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.amity.concurrency.wait;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Check condition again after sleeping sleepMillis, signal is not needed
+ */
+public class SleepWaitStrategy implements WaitStrategy {
+    private final long sleepMillis;
+
+    public SleepWaitStrategy(long sleepMillis) {
+        if (sleepMillis <= 0) {
+            throw new IllegalArgumentException("sleep millis should be positive : " + sleepMillis);
+        }
+        this.sleepMillis = sleepMillis;
+    }
+
+    @Override
+    public boolean await(BooleanSupplier condition, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (!condition.getAsBoolean()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            Thread.sleep(Math.min(sleepMillis, Math.max(1, remaining / 1000000)));
+        }
+        return true;
+    }
+
+    @Override
+    public void signalAll() {
+    }
+}
@@ -0,0 +1,50 @@
+package org.amity.concurrency.wait;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * How a reader waits for a page of its partition to become readable
+ * <p>
+ * BUSY_SPIN  - keep checking, lowest latency, burns a core per waiting reader
+ * SPIN_YIELD - spin for a while then yield the core between checks
+ * PARK       - park until writer signals a readable page, no cpu while idle
+ * SLEEP      - check again after a fixed sleep i.e. retry after configured time
+ */
+public interface WaitStrategy {
+
+    enum Mode {BUSY_SPIN, SPIN_YIELD, PARK, SLEEP}
+
+    /**
+     * Block calling thread until condition holds or timeout elapses
+     *
+     * @param condition    checked before every wait, must be cheap
+     * @param timeoutNanos max time to wait
+     * @return true if condition holds, false on timeout
+     */
+    boolean await(BooleanSupplier condition, long timeoutNanos) throws InterruptedException;
+
+    /**
+     * Condition may have changed, wake up waiting threads
+     */
+    void signalAll();
+
+    static WaitStrategy create(Mode mode, long sleepMillis) {
+        switch (mode) {
+            case BUSY_SPIN: {
+                return new BusySpinWaitStrategy();
+            }
+            case SPIN_YIELD: {
+                return new SpinYieldWaitStrategy();
+            }
+            case PARK: {
+                return new ParkWaitStrategy();
+            }
+            case SLEEP: {
+                return new SleepWaitStrategy(sleepMillis);
+            }
+            default: {
+                throw new IllegalArgumentException("Unreachable code.");
+            }
+        }
+    }
+}
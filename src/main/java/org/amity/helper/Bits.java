@@ -16,7 +16,8 @@ public class Bits {
      * - countBits(0b11111101) == 7
      */
     public static int countBits(byte b) {
-        return Integer.bitCount(b);
+        // mask to avoid counting sign extended bits of negative bytes
+        return Integer.bitCount(b & 0xFF);
     }
 
     /**
@@ -1,14 +1,12 @@
 package org.amity.helper;
 
 import org.amity.concurrency.error.DatabaseException;
-import org.amity.storage.StorageManager;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.stream.IntStream;
 
 /**
  *
@@ -21,11 +19,28 @@ public class FileAndDirHelper {
     public static final String DEFAULT_DB_PATH = System.getProperty(USER_HOME) + "/" + DB_NAME;
     public static final String PARTITION_PATH = DEFAULT_DB_PATH + "/" + PARTITION + "-";
 
-    private static void createPartitionDirectories(String dbDir) {
-        IntStream.range(0, StorageManager.MAX_PARTITION_ALLOWED).forEachOrdered(i -> {
-            String str = PARTITION_PATH + i;
-            setupDirectory(str);
-        });
+    /**
+     * Create db directory if missing, partition directories are created with their partition
+     */
+    public static void createDbDirectory() {
+        setupDirectory(DEFAULT_DB_PATH);
+    }
+
+    /**
+     * Create directory of a single partition if missing
+     *
+     * @param partNum partition number
+     */
+    public static void createPartitionDirectory(int partNum) {
+        setupDirectory(PARTITION_PATH + partNum);
+    }
+
+    /**
+     * @param partNum partition number
+     * @return true if partition files were created before
+     */
+    public static boolean partitionExists(int partNum) {
+        return new File(PARTITION_PATH + partNum + "/offset" + partNum).isFile();
     }
 
     private static boolean setupDirectory(String fileDir) {
@@ -0,0 +1,210 @@
+package org.amity.helper;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Header page bitmap backed by long words
+ * <p>
+ * Layout is same as {@link Bits#setBit(byte[], int, Bits.Bit)} i.e. 0th bit is the most significant
+ * bit of first byte, so a big endian long of 8 bytes is one word and 0th bit of a word is its MSB.
+ * <p>
+ * Free slot search scans a whole word at a time with {@link Long#numberOfLeadingZeros(long)}
+ * starting from a remembered cursor (lowest word which can have a ZERO bit), so finding
+ * the first free page does not rescan full words already allocated.
+ */
+public class PageBitmap {
+    private static final int WORD_BITS = Long.SIZE;
+    private final long[] words;
+    private final int nbits;
+    // lowest word which may contain a ZERO bit
+    private int cursor;
+
+    public PageBitmap(int nbits) {
+        if (nbits <= 0) {
+            throw new IllegalArgumentException("bitmap size should be positive : " + nbits);
+        }
+        this.nbits = nbits;
+        this.words = new long[(nbits + WORD_BITS - 1) / WORD_BITS];
+    }
+
+    /**
+     * Load bitmap from first nbits of a header page
+     *
+     * @param bytes header page bytes
+     * @param nbits number of bits (data pages) in header page
+     * @return bitmap
+     */
+    public static PageBitmap fromBytes(byte[] bytes, int nbits) {
+        return fromBuffer(ByteBuffer.wrap(bytes), nbits);
+    }
+
+    /**
+     * Load bitmap from first nbits of a header page buffer starting at its position
+     *
+     * @param b     header page buffer
+     * @param nbits number of bits (data pages) in header page
+     * @return bitmap
+     */
+    public static PageBitmap fromBuffer(ByteBuffer b, int nbits) {
+        if (b.remaining() * 8 < nbits) {
+            throw new IllegalArgumentException(String.format("bytes.length = %d; nbits = %d.", b.remaining(), nbits));
+        }
+        PageBitmap bitmap = new PageBitmap(nbits);
+        b = b.duplicate();
+        b.limit(b.position() + (nbits + 7) / 8);
+        for (int w = 0; w < bitmap.words.length; w++) {
+            if (b.remaining() >= Long.BYTES) {
+                bitmap.words[w] = b.getLong();
+            } else {
+                // tail shorter than a word, fill from MSB side
+                long word = 0;
+                int shift = WORD_BITS - 8;
+                while (b.hasRemaining()) {
+                    word |= (b.get() & 0xFFL) << shift;
+                    shift -= 8;
+                }
+                bitmap.words[w] = word;
+            }
+        }
+        bitmap.clearTail();
+        return bitmap;
+    }
+
+    /**
+     * Serialize bitmap in header page layout, bytes after nbits are left untouched
+     *
+     * @param bytes header page bytes
+     */
+    public void writeTo(byte[] bytes) {
+        writeTo(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Serialize bitmap in header page layout at buffer position
+     *
+     * @param b header page buffer
+     */
+    public void writeTo(ByteBuffer b) {
+        int bytes = (nbits + 7) / 8;
+        for (int w = 0; w < words.length; w++) {
+            int left = bytes - w * Long.BYTES;
+            if (left >= Long.BYTES) {
+                b.putLong(words[w]);
+            } else {
+                for (int i = 0; i < left; i++) {
+                    b.put((byte) (words[w] >>> (WORD_BITS - 8 * (i + 1))));
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return nbits;
+    }
+
+    public boolean get(int i) {
+        checkIndex(i);
+        return (words[i / WORD_BITS] & mask(i)) != 0;
+    }
+
+    /**
+     * Mark ith bit ONE
+     *
+     * @param i bit index
+     * @return true if bit was ZERO before
+     */
+    public boolean set(int i) {
+        checkIndex(i);
+        int w = i / WORD_BITS;
+        long old = words[w];
+        words[w] = old | mask(i);
+        return old != words[w];
+    }
+
+    /**
+     * Mark ith bit ZERO
+     *
+     * @param i bit index
+     * @return true if bit was ONE before
+     */
+    public boolean clear(int i) {
+        checkIndex(i);
+        int w = i / WORD_BITS;
+        long old = words[w];
+        words[w] = old & ~mask(i);
+        if (w < cursor) {
+            cursor = w;
+        }
+        return old != words[w];
+    }
+
+    /**
+     * @return first ZERO bit or -1 if all bits are ONE
+     */
+    public int nextClearBit() {
+        for (int w = cursor; w < words.length; w++) {
+            long free = ~words[w];
+            if (free != 0) {
+                cursor = w;
+                int i = w * WORD_BITS + Long.numberOfLeadingZeros(free);
+                return i < nbits ? i : -1;
+            }
+        }
+        cursor = words.length;
+        return -1;
+    }
+
+    /**
+     * @param from bit index to start from (inclusive)
+     * @return first ONE bit at or after from or -1 if none
+     */
+    public int nextSetBit(int from) {
+        if (from < 0) {
+            from = 0;
+        }
+        if (from >= nbits) {
+            return -1;
+        }
+        int w = from / WORD_BITS;
+        // drop bits before from
+        long word = words[w] & (-1L >>> (from % WORD_BITS));
+        while (true) {
+            if (word != 0) {
+                return w * WORD_BITS + Long.numberOfLeadingZeros(word);
+            }
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    /**
+     * @return number of ONE bits
+     */
+    public int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private static long mask(int i) {
+        return 1L << (WORD_BITS - 1 - (i % WORD_BITS));
+    }
+
+    // bits after nbits in last word never count as free or allocated
+    private void clearTail() {
+        int tail = nbits % WORD_BITS;
+        if (tail != 0) {
+            words[words.length - 1] &= -1L << (WORD_BITS - tail);
+        }
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= nbits) {
+            throw new IllegalArgumentException(String.format("index %d out of bounds", i));
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.amity.storage;
+
+import org.amity.concurrency.executors.ThreadExecutorPool;
+import org.amity.concurrency.factory.ThreadFactoryBuilder;
+import org.amity.concurrency.factory.VirtualThreads;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Completion based page I/O on a partition file
+ * <p>
+ * Up to asyncQueueDepth reads/writes are kept in flight per partition, operations beyond it are queued
+ * and started as slots free up, so no caller (completion callbacks included) blocks for a slot.
+ * Completions run on a pool shared by all partitions, its size is the I/O depth available to the device.
+ * Commit of a write (group commit may block in force) runs on a separate commit pool and the write
+ * keeps its slot till commit is done, so {@link #awaitInFlight()} covers commits too.
+ * <p>
+ * Writes go around the page I/O engine, so {@link #force()} has to be part of partition sync.
+ */
+public class AsyncPageChannel implements AutoCloseable {
+    private static final String ASYNC_IO_THREAD = "aio-thread";
+    private static final String ASYNC_COMMIT_THREAD = "acm-thread";
+    // completion pool shared by all partitions, sized by config of first partition opening a channel
+    private static ExecutorService ioExecutor;
+    // commit pool shared by all partitions, same size as completion pool
+    private static ExecutorService commitExecutor;
+
+    /**
+     * Makes a completed write durable, run on commit pool
+     */
+    public interface Commit {
+        void run() throws IOException;
+    }
+
+    private final AsynchronousFileChannel channel;
+    private final ExecutorService commits;
+    private final Semaphore inFlight;
+    private final int queueDepth;
+    // written since last force
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    // operations waiting for a slot
+    private final ConcurrentLinkedQueue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    public AsyncPageChannel(String fileName, StorageConfig config) throws IOException {
+        this.queueDepth = config.getAsyncQueueDepth();
+        this.inFlight = new Semaphore(queueDepth);
+        this.commits = commitExecutor(config);
+        this.channel = AsynchronousFileChannel.open(Paths.get(fileName),
+                EnumSet.of(StandardOpenOption.READ, StandardOpenOption.WRITE), executor(config));
+    }
+
+    /**
+     * @return pool completing async page operations
+     */
+    static synchronized ExecutorService executor(StorageConfig config) {
+        if (ioExecutor == null) {
+            ioExecutor = newExecutor(config, ASYNC_IO_THREAD);
+        }
+        return ioExecutor;
+    }
+
+    /**
+     * @return pool running group commits of async writes, never the completion pool
+     */
+    static synchronized ExecutorService commitExecutor(StorageConfig config) {
+        if (commitExecutor == null) {
+            commitExecutor = newExecutor(config, ASYNC_COMMIT_THREAD);
+        }
+        return commitExecutor;
+    }
+
+    private static ExecutorService newExecutor(StorageConfig config, String namePrefix) {
+        if (config.getExecutorMode() == ThreadExecutorPool.Mode.VIRTUAL) {
+            return VirtualThreads.newThreadPerTaskExecutor(namePrefix);
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(config.getAsyncIoThreads(), config.getAsyncIoThreads(),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+                .setNamePrefix(namePrefix)
+                .setDaemon(true)
+                .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Write buffer from its position till limit at file position
+     *
+     * @return future completed once all bytes are written (not yet durable)
+     */
+    public CompletableFuture<Void> write(ByteBuffer src, long position) {
+        return write(src, position, null);
+    }
+
+    /**
+     * Write buffer from its position till limit at file position and then run commit on commit pool
+     *
+     * @param commit run once all bytes are written, null for none
+     * @return future completed once commit is done
+     */
+    public CompletableFuture<Void> write(ByteBuffer src, long position, Commit commit) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        start(future, () -> channel.write(src, position, position, new CompletionHandler<Integer, Long>() {
+            @Override
+            public void completed(Integer written, Long at) {
+                if (src.hasRemaining()) {
+                    channel.write(src, at + written, at + written, this);
+                    return;
+                }
+                // set once bytes landed, a force started earlier does not cover them
+                dirty.set(true);
+                if (commit == null) {
+                    complete(future, null);
+                } else {
+                    commits.execute(() -> {
+                        try {
+                            commit.run();
+                            complete(future, null);
+                        } catch (IOException | RuntimeException e) {
+                            fail(future, e);
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void failed(Throwable exc, Long at) {
+                fail(future, exc);
+            }
+        }));
+        return future;
+    }
+
+    /**
+     * Read in buffer from its position till limit at file position, bytes past end of file stay untouched
+     *
+     * @return future completed once buffer is filled or end of file is reached
+     */
+    public CompletableFuture<Void> read(ByteBuffer dst, long position) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        start(future, () -> channel.read(dst, position, position, new CompletionHandler<Integer, Long>() {
+            @Override
+            public void completed(Integer read, Long at) {
+                if (read >= 0 && dst.hasRemaining()) {
+                    channel.read(dst, at + read, at + read, this);
+                } else {
+                    complete(future, null);
+                }
+            }
+
+            @Override
+            public void failed(Throwable exc, Long at) {
+                fail(future, exc);
+            }
+        }));
+        return future;
+    }
+
+    /**
+     * Force writes done through this channel, no-op if nothing was written since last force
+     */
+    public void force() throws IOException {
+        if (dirty.getAndSet(false)) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Wait for operations in flight to complete
+     */
+    public void awaitInFlight() {
+        inFlight.acquireUninterruptibly(queueDepth);
+        inFlight.release(queueDepth);
+    }
+
+    /**
+     * Queue operation, it is started at once if a slot is free or else by the operation releasing one
+     *
+     * @param future failed if operation cannot be started
+     */
+    private void start(CompletableFuture<Void> future, Runnable operation) {
+        waiting.add(() -> {
+            try {
+                operation.run();
+            } catch (RuntimeException e) {
+                fail(future, e);
+            }
+        });
+        startWaiting();
+    }
+
+    private void startWaiting() {
+        // a slot released after the queue check is taken by its releaser
+        while (!waiting.isEmpty() && inFlight.tryAcquire()) {
+            Runnable operation = waiting.poll();
+            if (operation == null) {
+                inFlight.release();
+            } else {
+                operation.run();
+            }
+        }
+    }
+
+    private void release() {
+        inFlight.release();
+        startWaiting();
+    }
+
+    private void complete(CompletableFuture<Void> future, Void value) {
+        release();
+        future.complete(value);
+    }
+
+    private void fail(CompletableFuture<Void> future, Throwable exc) {
+        release();
+        future.completeExceptionally(exc);
+    }
+
+    @Override
+    public void close() throws IOException {
+        awaitInFlight();
+        channel.close();
+    }
+}
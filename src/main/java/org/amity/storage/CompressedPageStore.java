@@ -0,0 +1,265 @@
+package org.amity.storage;
+
+import org.amity.storage.codec.PageCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logical data pages of a compressed partition, packed as compressed frames in data page area of offset file
+ * <p>
+ * Frame : magic (4) | first page (4) | pages (2) | codec id (1) | unused (1) | compressed length (4) | bytes
+ * 1. written pages are staged in memory, each run of up to compressionFramePages consecutive pages is
+ * compressed into one frame appended right after the previous frame (physical pages are only the storage unit)
+ * 2. index file maps a logical page to byte position of its frame : 8 bytes per page, 0 if never written,
+ * a rewritten page goes in a new frame (writer pages are never reused, frames are append only)
+ * 3. sync writes staged frames and forces them, then writes back and forces dirty index blocks,
+ * a frame missing from durable index is overwritten by next append after restart
+ * 4. last decompressed frame is kept so a reader going through a frame decompresses it once
+ */
+class CompressedPageStore implements AutoCloseable {
+    static final String INDEX_FILE = "idx";
+    private static final int FRAME_MAGIC = 0x4F4D4652;
+    private static final int FRAME_HEADER_SIZE = 16;
+    private static final int INDEX_BLOCK_SIZE = StorageManager.PAGE_SIZE;
+    // frames start after writer master and header page
+    private static final long FRAME_AREA_OFFSET = 2L * StorageManager.PAGE_SIZE;
+
+    private final PageIOEngine engine;
+    private final FileChannel indexChannel;
+    private final ByteBuffer index;
+    private final BitSet dirtyIndexBlocks = new BitSet();
+    private final PageCodec codec;
+    private final int framePages;
+    private final TreeMap<Integer, byte[]> staged = new TreeMap<>();
+    private long appendPosition = FRAME_AREA_OFFSET;
+    private final byte[] rawFrame;
+    private final byte[] compressedFrame;
+    /**
+     * last decompressed frame, guarded by readLock
+     */
+    private final Object readLock = new Object();
+    private long cachedFramePosition = -1;
+    private int cachedFirstPage;
+    private byte[] cachedPages = new byte[0];
+    private byte[] readBytes = new byte[0];
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+
+    /**
+     * @return true if partition with this index file was created compressed
+     */
+    static boolean exists(String indexFile) {
+        return Files.exists(Paths.get(indexFile));
+    }
+
+    /**
+     * @param indexFile index file of partition, created if missing
+     * @param engine    page I/O on offset file
+     * @param config    codec and frame pages for new frames
+     */
+    CompressedPageStore(String indexFile, PageIOEngine engine, StorageConfig config) throws IOException {
+        this.engine = engine;
+        this.codec = config.getCompressionCodec() != null ? config.getCompressionCodec() : PageCodec.LZ;
+        this.framePages = config.getCompressionFramePages();
+        this.rawFrame = new byte[framePages * StorageManager.PAGE_SIZE];
+        this.compressedFrame = new byte[framePages * StorageManager.PAGE_SIZE];
+        this.indexChannel = FileChannel.open(Paths.get(indexFile),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.index = ByteBuffer.allocateDirect(StorageManager.MAX_HEADER_PAGES * StorageManager.DATA_PAGES_PER_HEADER
+                * Long.BYTES);
+        while (this.index.hasRemaining() && this.indexChannel.read(this.index, this.index.position()) >= 0) {
+            // read till buffer is full or end of file, missing entries are never written pages
+        }
+        this.index.clear();
+        // next frame goes after the last indexed frame
+        long last = -1;
+        for (int i = 0; i < this.index.capacity(); i += Long.BYTES) {
+            last = Math.max(last, this.index.getLong(i) - 1);
+        }
+        if (last >= 0) {
+            this.appendPosition = last + FRAME_HEADER_SIZE + readFrameHeader(last).getInt(12);
+        }
+    }
+
+    /**
+     * Stage a written page, it is compressed once a frame is full or on {@link #sync()}
+     *
+     * @param page PAGE_SIZE bytes remaining, position is advanced past the page
+     */
+    void stage(int pageNum, ByteBuffer page) throws IOException {
+        byte[] copy = new byte[StorageManager.PAGE_SIZE];
+        page.get(copy);
+        synchronized (this) {
+            this.staged.put(pageNum, copy);
+            if (this.staged.size() >= this.framePages) {
+                writeFrames();
+            }
+        }
+    }
+
+    /**
+     * Read a logical page, a page allocated but never written reads as zeros
+     *
+     * @param dst PAGE_SIZE bytes remaining, position is advanced past the page
+     */
+    void read(int pageNum, ByteBuffer dst) throws IOException {
+        long position;
+        synchronized (this) {
+            byte[] page = this.staged.get(pageNum);
+            if (page != null) {
+                dst.put(page);
+                return;
+            }
+            position = this.index.getLong(pageNum * Long.BYTES) - 1;
+        }
+        if (position < 0) {
+            dst.put(PageBufferPool.zeroPage());
+            return;
+        }
+        synchronized (readLock) {
+            if (position != this.cachedFramePosition) {
+                loadFrame(position);
+            }
+            dst.put(this.cachedPages, (pageNum - this.cachedFirstPage) * StorageManager.PAGE_SIZE,
+                    StorageManager.PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Write staged frames, force them and then force index pointing to them
+     */
+    synchronized void sync() throws IOException {
+        writeFrames();
+        this.engine.force();
+        boolean written = false;
+        for (int block = this.dirtyIndexBlocks.nextSetBit(0); block >= 0;
+             block = this.dirtyIndexBlocks.nextSetBit(block + 1)) {
+            ByteBuffer src = this.index.duplicate();
+            src.position(block * INDEX_BLOCK_SIZE);
+            src.limit(Math.min(src.capacity(), (block + 1) * INDEX_BLOCK_SIZE));
+            long position = (long) block * INDEX_BLOCK_SIZE;
+            while (src.hasRemaining()) {
+                position += this.indexChannel.write(src, position);
+            }
+            written = true;
+        }
+        this.dirtyIndexBlocks.clear();
+        if (written) {
+            this.indexChannel.force(false);
+        }
+    }
+
+    /**
+     * @return bytes of pages written
+     */
+    long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    /**
+     * @return bytes of frames (header included) written for them
+     */
+    long getStoredBytes() {
+        return storedBytes.sum();
+    }
+
+    // call with monitor held
+    private void writeFrames() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        while (!this.staged.isEmpty()) {
+            int firstPage = this.staged.firstKey();
+            int pages = 0;
+            byte[] page;
+            while (pages < this.framePages && (page = this.staged.get(firstPage + pages)) != null) {
+                System.arraycopy(page, 0, this.rawFrame, pages * StorageManager.PAGE_SIZE, StorageManager.PAGE_SIZE);
+                pages++;
+            }
+            int rawLength = pages * StorageManager.PAGE_SIZE;
+            byte codecId = this.codec.id();
+            byte[] body = this.compressedFrame;
+            int length = this.codec.compress(this.rawFrame, rawLength, this.compressedFrame);
+            if (length < 0 || length >= rawLength) {
+                // incompressible, stored as is
+                codecId = PageCodec.STORED;
+                body = this.rawFrame;
+                length = rawLength;
+            }
+            header.clear();
+            header.putInt(FRAME_MAGIC).putInt(firstPage).putShort((short) pages).put(codecId).put((byte) 0)
+                    .putInt(length);
+            header.flip();
+            this.engine.write(new ByteBuffer[]{header, ByteBuffer.wrap(body, 0, length)}, this.appendPosition);
+            for (int k = 0; k < pages; k++) {
+                int pageNum = firstPage + k;
+                this.index.putLong(pageNum * Long.BYTES, this.appendPosition + 1);
+                this.dirtyIndexBlocks.set(pageNum * Long.BYTES / INDEX_BLOCK_SIZE);
+                this.staged.remove(pageNum);
+            }
+            this.appendPosition += FRAME_HEADER_SIZE + length;
+            this.rawBytes.add(rawLength);
+            this.storedBytes.add(FRAME_HEADER_SIZE + length);
+        }
+    }
+
+    private ByteBuffer readFrameHeader(long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        this.engine.read(header, position);
+        header.flip();
+        if (header.remaining() != FRAME_HEADER_SIZE || header.getInt(0) != FRAME_MAGIC) {
+            throw new PageException("no compressed frame at " + position);
+        }
+        return header;
+    }
+
+    // call with readLock held
+    private void loadFrame(long position) throws IOException {
+        ByteBuffer header = readFrameHeader(position);
+        int firstPage = header.getInt(4);
+        int pages = header.getShort(8);
+        byte codecId = header.get(10);
+        int length = header.getInt(12);
+        int rawLength = pages * StorageManager.PAGE_SIZE;
+        if (pages <= 0 || length < 0 || length > rawLength) {
+            throw new PageException("corrupt compressed frame header at " + position);
+        }
+        if (this.cachedPages.length < rawLength) {
+            this.cachedPages = new byte[rawLength];
+            this.readBytes = new byte[rawLength];
+        }
+        // frame is invalid till fully decoded
+        this.cachedFramePosition = -1;
+        if (codecId == PageCodec.STORED) {
+            this.engine.read(ByteBuffer.wrap(this.cachedPages, 0, rawLength), position + FRAME_HEADER_SIZE);
+        } else {
+            this.engine.read(ByteBuffer.wrap(this.readBytes, 0, length), position + FRAME_HEADER_SIZE);
+            codecFor(codecId).decompress(this.readBytes, length, this.cachedPages, rawLength);
+        }
+        this.cachedFramePosition = position;
+        this.cachedFirstPage = firstPage;
+    }
+
+    private PageCodec codecFor(byte codecId) throws IOException {
+        if (codecId == this.codec.id()) {
+            return this.codec;
+        }
+        PageCodec builtIn = PageCodec.builtIn(codecId);
+        if (builtIn == null) {
+            throw new IOException("frame written with unknown codec " + codecId);
+        }
+        return builtIn;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        this.indexChannel.close();
+    }
+}
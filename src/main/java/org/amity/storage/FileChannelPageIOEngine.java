@@ -0,0 +1,70 @@
+package org.amity.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fallback engine : every page is a positional FileChannel read/write
+ */
+public class FileChannelPageIOEngine implements PageIOEngine {
+    private final FileChannel fileChannel;
+
+    public FileChannelPageIOEngine(FileChannel fileChannel) {
+        this.fileChannel = fileChannel;
+    }
+
+    @Override
+    public void write(ByteBuffer src, long position) throws IOException {
+        while (src.hasRemaining()) {
+            position += this.fileChannel.write(src, position);
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer[] srcs, long position) throws IOException {
+        // FileChannel has no positional gathering write, channel position is shared by gathering writers
+        synchronized (this.fileChannel) {
+            this.fileChannel.position(position);
+            while (srcs[srcs.length - 1].hasRemaining()) {
+                this.fileChannel.write(srcs);
+            }
+        }
+    }
+
+    @Override
+    public void read(ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int read = this.fileChannel.read(dst, position);
+            // nothing written at this position yet
+            if (read < 0) {
+                return;
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void read(ByteBuffer[] dsts, long position) throws IOException {
+        // FileChannel has no positional scattering read, channel position is shared by gathering writers
+        synchronized (this.fileChannel) {
+            this.fileChannel.position(position);
+            while (dsts[dsts.length - 1].hasRemaining()) {
+                // nothing written at this position yet
+                if (this.fileChannel.read(dsts) < 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void force() throws IOException {
+        this.fileChannel.force(false);
+    }
+
+    @Override
+    public void close() {
+        // channel is owned by the partition
+    }
+}
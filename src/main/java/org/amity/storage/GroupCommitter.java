@@ -0,0 +1,198 @@
+package org.amity.storage;
+
+import org.amity.concurrency.factory.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Group commit stage of a partition
+ * <p>
+ * Every written page takes a ticket (sequence number of pages written so far).
+ * Durability of a ticket is reached by a single force() which covers all pages written before it,
+ * so concurrent or back-to-back writers waiting on the same partition share one force :
+ * 1. first waiter becomes leader, snapshots the written sequence and forces outside the lock
+ * 2. others queue on the condition while leader is syncing
+ * 3. leader publishes durable sequence and wakes everyone, waiters already covered return,
+ * the rest elect the next leader for the next batch
+ * <p>
+ * Policy decides when a caller waits :
+ * EVERY_WRITE   - caller is released once its page is durable
+ * EVERY_N_PAGES - caller completing N not yet durable pages syncs the batch, others return immediately
+ * INTERVAL      - background sync every T millis if something was written, callers never wait
+ * OS_MANAGED    - never force, OS flushes dirty pages (force only on close)
+ */
+public class GroupCommitter implements AutoCloseable {
+
+    public enum DurabilityPolicy {EVERY_WRITE, EVERY_N_PAGES, INTERVAL, OS_MANAGED}
+
+    /**
+     * Action making everything written so far durable i.e. force on partition files
+     */
+    public interface SyncAction {
+        void sync() throws IOException;
+    }
+
+    private static final String SYNC_THREAD = "gc-sync-thread";
+    // single timer shared by all partitions running with INTERVAL policy
+    private static ScheduledThreadPoolExecutor syncScheduler;
+
+    private final DurabilityPolicy policy;
+    private final int syncEveryPages;
+    private final SyncAction syncAction;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+    private long writtenSeq;
+    private long durableSeq;
+    private boolean syncing;
+    private ScheduledFuture<?> intervalSync;
+
+    public GroupCommitter(StorageConfig config, SyncAction syncAction) {
+        this.policy = config.getDurabilityPolicy();
+        this.syncEveryPages = config.getSyncEveryPages();
+        this.syncAction = syncAction;
+        if (this.policy == DurabilityPolicy.INTERVAL) {
+            long interval = config.getSyncIntervalMillis();
+            this.intervalSync = scheduler().scheduleWithFixedDelay(this::syncInBackground,
+                    interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Called once pages are written (not yet durable)
+     *
+     * @param pages number of pages written
+     * @return ticket to wait for
+     */
+    public long written(int pages) {
+        lock.lock();
+        try {
+            writtenSeq += pages;
+            return writtenSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Block caller as per durability policy until the ticket is durable
+     *
+     * @param ticket returned by {@link #written(int)}
+     */
+    public void awaitDurable(long ticket) throws IOException {
+        switch (policy) {
+            case EVERY_WRITE: {
+                syncUpTo(ticket);
+                break;
+            }
+            case EVERY_N_PAGES: {
+                if (ticket - durableSeq() >= syncEveryPages) {
+                    syncUpTo(ticket);
+                }
+                break;
+            }
+            case INTERVAL:
+            case OS_MANAGED: {
+                break;
+            }
+            default: {
+                throw new IllegalArgumentException("Unreachable code.");
+            }
+        }
+    }
+
+    /**
+     * Written + awaitDurable in one call
+     *
+     * @param pages number of pages written
+     */
+    public void commit(int pages) throws IOException {
+        awaitDurable(written(pages));
+    }
+
+    /**
+     * Force everything written so far whatever the policy is
+     */
+    public void flush() throws IOException {
+        long ticket;
+        lock.lock();
+        try {
+            ticket = writtenSeq;
+        } finally {
+            lock.unlock();
+        }
+        syncUpTo(ticket);
+    }
+
+    private long durableSeq() {
+        lock.lock();
+        try {
+            return durableSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void syncUpTo(long ticket) throws IOException {
+        lock.lock();
+        try {
+            while (durableSeq < ticket) {
+                if (syncing) {
+                    // leader is syncing, wait for it and check if our ticket got covered
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                // become leader for everything written so far
+                syncing = true;
+                long target = writtenSeq;
+                boolean done = false;
+                lock.unlock();
+                try {
+                    syncAction.sync();
+                    done = true;
+                } finally {
+                    lock.lock();
+                    syncing = false;
+                    if (done) {
+                        durableSeq = Math.max(durableSeq, target);
+                    }
+                    synced.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void syncInBackground() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.printf("Thread %s failed to sync partition - %s%n", Thread.currentThread().getName(),
+                    e.getMessage());
+        }
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor scheduler() {
+        if (syncScheduler == null) {
+            syncScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                    .setNamePrefix(SYNC_THREAD)
+                    .setDaemon(true)
+                    .build());
+            syncScheduler.setRemoveOnCancelPolicy(true);
+        }
+        return syncScheduler;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (intervalSync != null) {
+            intervalSync.cancel(false);
+        }
+        flush();
+    }
+}
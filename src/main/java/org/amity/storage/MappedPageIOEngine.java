@@ -0,0 +1,126 @@
+package org.amity.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Memory mapped engine
+ * <p>
+ * File is split into regions of regionPages * PAGE_SIZE bytes, each region is mapped
+ * on first touch (mapping READ_WRITE grows the file up to region end).
+ * Page read/write is a copy from/to the mapped region so no syscall per page,
+ * only force() goes to the OS and only for regions dirtied since last force.
+ * <p>
+ * Positions are page aligned and region size is multiple of page size so a page never spans
+ * two regions, but copy still handles it for arbitrary length buffers.
+ */
+public class MappedPageIOEngine implements PageIOEngine {
+    private final FileChannel fileChannel;
+    private final int regionSize;
+    private MappedByteBuffer[] regions;
+    private final BitSet dirtyRegions;
+
+    public MappedPageIOEngine(FileChannel fileChannel, int regionPages) {
+        if (regionPages <= 0) {
+            throw new IllegalArgumentException("region pages should be positive : " + regionPages);
+        }
+        this.fileChannel = fileChannel;
+        this.regionSize = regionPages * StorageManager.PAGE_SIZE;
+        this.regions = new MappedByteBuffer[1];
+        this.dirtyRegions = new BitSet();
+    }
+
+    @Override
+    public void write(ByteBuffer src, long position) throws IOException {
+        while (src.hasRemaining()) {
+            int index = (int) (position / regionSize);
+            int offset = (int) (position % regionSize);
+            int length = Math.min(src.remaining(), regionSize - offset);
+
+            ByteBuffer region = region(index).duplicate();
+            region.position(offset);
+            ByteBuffer chunk = src.duplicate();
+            chunk.limit(chunk.position() + length);
+            region.put(chunk);
+            src.position(src.position() + length);
+
+            markDirty(index);
+            position += length;
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer[] srcs, long position) throws IOException {
+        for (ByteBuffer src : srcs) {
+            int length = src.remaining();
+            write(src, position);
+            position += length;
+        }
+    }
+
+    @Override
+    public void read(ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int index = (int) (position / regionSize);
+            int offset = (int) (position % regionSize);
+            int length = Math.min(dst.remaining(), regionSize - offset);
+
+            ByteBuffer region = region(index).duplicate();
+            region.position(offset);
+            region.limit(offset + length);
+            dst.put(region);
+
+            position += length;
+        }
+    }
+
+    @Override
+    public void read(ByteBuffer[] dsts, long position) throws IOException {
+        for (ByteBuffer dst : dsts) {
+            int length = dst.remaining();
+            read(dst, position);
+            position += length;
+        }
+    }
+
+    @Override
+    public void force() throws IOException {
+        MappedByteBuffer[] toForce;
+        BitSet dirty;
+        synchronized (this) {
+            dirty = (BitSet) this.dirtyRegions.clone();
+            this.dirtyRegions.clear();
+            toForce = this.regions;
+        }
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            toForce[i].force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        // mapping is released once regions are garbage collected
+        Arrays.fill(this.regions, null);
+    }
+
+    private synchronized void markDirty(int index) {
+        this.dirtyRegions.set(index);
+    }
+
+    private synchronized MappedByteBuffer region(int index) throws IOException {
+        if (index >= this.regions.length) {
+            this.regions = Arrays.copyOf(this.regions, Math.max(index + 1, this.regions.length * 2));
+        }
+        MappedByteBuffer region = this.regions[index];
+        if (region == null) {
+            region = this.fileChannel.map(FileChannel.MapMode.READ_WRITE, (long) index * regionSize, regionSize);
+            this.regions[index] = region;
+        }
+        return region;
+    }
+}
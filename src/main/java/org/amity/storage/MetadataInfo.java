@@ -7,24 +7,85 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
 
 /**
- * first 4 short values are for active partition
- * 5 th position for NEXT_AVAILABLE_PARTITION_INDEX
+ * Metadata of the db : active partitions, next available partition and partitions marked readable (full)
  * <p>
- * TODO : Remaining left for saving other metadata in future
+ * In-memory state is authoritative, it is never read back from disk after init.
+ * Every change is committed as a whole new version into one of two meta slots (shadow paging) :
+ * 1. slot of a version is version % 2, so a commit never overwrites the latest durable version
+ * 2. slot : magic (4) | version (8) | active partitions (2 each) | next available partition (2) |
+ * readable partition bits (MAX_PARTITION_ALLOWED bits) | spare partition bits (MAX_PARTITION_ALLOWED bits) |
+ * crc32c of previous bytes (4)
+ * 3. init picks the valid slot with highest version, a torn slot fails its crc and the other one is used
+ * 4. a meta file of the old single page layout is read once and committed as version 1
+ * 5. next available partition is persisted as highest partition made active + 1, spares reserved beyond it
+ * are reserved and reopened again after restart. Spares below it (given back after a lost switch) are kept
+ * in spare bits, bit is set when number is reserved i.e. before any higher number is made active,
+ * so they are reserved again first.
+ * <p>
+ * Writers switch partitions without locks : each writer slot of active partitions is claimed with a CAS
+ * from the full partition to the new one, readable bits are CAS updated too. A change is published by
+ * whichever thread gets the commit lock (tryLock), it commits versions till no published change is left
+ * so other publishers return at once. Switches are durable through the journal before they are published,
+ * a journal checkpoint commits metadata with {@link #sync()} before their records are dropped.
+ * <p>
+ * Old single page layout : first 4 short values are active partitions,
+ * next available partition at NEXT_AV_PART_POSITION and readable bits from READABLE_STARTING_POSITION
  */
 public class MetadataInfo implements AutoCloseable {
     public static final int NEXT_AVAILABLE_PARTITION_INDEX = 5;
     public static final int READABLE_STARTING_POSITION = 16 * 10;
     public static final int NEXT_AV_PART_POSITION = 16 * 4;
+    private static final int SLOT_MAGIC = 0x4F4D4554;
+    private static final int SLOTS = 2;
     private final RandomAccessFile file;
-    public final short[] activePartitions = new short[4];
+    /**
+     * writer slot to partition it writes to
+     */
+    private final AtomicIntegerArray activePartitions = new AtomicIntegerArray(StorageManager.MAX_WRITE_THREAD_ALLOWED);
     public static AtomicInteger totalPartitionCounter = new AtomicInteger();
     public AtomicInteger nextAvailablePartition;
+    /**
+     * highest partition made active + 1, persisted as next available partition
+     */
+    private final AtomicInteger activatedPartitions = new AtomicInteger();
+    /**
+     * partitions reserved as spares and not made active yet
+     */
+    private final AtomicLongArray sparePartitions = new AtomicLongArray(StorageManager.MAX_PARTITION_ALLOWED / Long.SIZE);
+    /**
+     * spares of last run below next available partition in number order, reserved before new numbers
+     */
+    private final ConcurrentLinkedQueue<Integer> leftoverSpares = new ConcurrentLinkedQueue<>();
     private FileChannel fileChannel;
+    /**
+     * partitions marked readable i.e. full and left to readers, cleared once their offsets are committed
+     */
+    private final AtomicLongArray readablePartitions = new AtomicLongArray(StorageManager.MAX_PARTITION_ALLOWED / Long.SIZE);
+    /**
+     * partition + 1 which replaced a partition since open, 0 if it was not replaced
+     */
+    private final AtomicIntegerArray successors = new AtomicIntegerArray(StorageManager.MAX_PARTITION_ALLOWED);
+    /**
+     * changes published so far and changes covered by last committed version
+     */
+    private final AtomicLong publishedChanges = new AtomicLong();
+    private volatile long committedChanges;
+    private final ReentrantLock commitLock = new ReentrantLock();
+    // guarded by commitLock
+    private long version;
+    private final CRC32C crc = new CRC32C();
 
     public MetadataInfo(String metaFileName) {
         try {
@@ -38,121 +99,388 @@ public class MetadataInfo implements AutoCloseable {
     public void updateActiveWritableAndReadablePartition(short oldPartitionValue, short newPartitionValue,
                                                          short nextAvailablePartition) throws IOException {
         replaceActivePartitionOnMetaFile(oldPartitionValue, newPartitionValue, nextAvailablePartition);
-
-        IntStream.range(0, StorageManager.MAX_WRITE_THREAD_ALLOWED).forEach(i -> {
-            if (activePartitions[i] == oldPartitionValue) {
-                activePartitions[i] = newPartitionValue;
-            }
-        });
-        // TODO check if we can move this anywhere
-//        nextAvPartition.incrementAndGet();
     }
 
+    /**
+     * Replace old partition by new one in active partitions and mark old one readable, committed in one write
+     */
     void replaceActivePartitionOnMetaFile(short oldValue, short newValue, short nextAvailablePartition) throws IOException {
-        ByteBuffer b = ByteBuffer.wrap(new byte[StorageManagerImpl.PAGE_SIZE]);
-        this.fileChannel.read(b, StorageManager.metaPageOffset());
-        // skip short byte for
-        b.position(0);
-        // Range
-        IntStream.range(0, NEXT_AVAILABLE_PARTITION_INDEX).filter(i -> {
-            // oldValue == Short.MIN_VALUE && value == newValue
-            short value = (short) (b.getShort() & 0xFFFF);
-            // mark the current position
-            b.mark();
-            if (oldValue == value) {
-                // reset to mark position
-                // TODO check carefully
-                b.reset();
-                // replace old value
-                b.putShort((short) (newValue & 0xFFFF));
-
-                b.rewind();
-                // point to the position where entry of partition needs to be done
-                b.position(NEXT_AV_PART_POSITION);
-                b.putShort(nextAvailablePartition);
-                try {
-                    // position is 0 for master page
-                    b.rewind();
-                    this.fileChannel.write(b, StorageManager.metaPageOffset());
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-                return true;
-            }
+        int slot = activeSlotOf(oldValue);
+        if (slot >= 0) {
+            switchActivePartition(slot, oldValue, newValue);
+        }
+        this.nextAvailablePartition.updateAndGet(x -> Math.max(x, nextAvailablePartition));
+        this.activatedPartitions.updateAndGet(x -> Math.max(x, nextAvailablePartition));
+        publish();
+    }
+
+    /**
+     * Claim writer slot of a full partition for its new partition, of concurrent switches of one slot
+     * only the first one wins. Old partition is marked readable, call {@link #publish()} to commit.
+     *
+     * @param slot       writer slot, see {@link #activeSlotOf(int)}
+     * @param oldPartNum full partition expected in slot
+     * @param newPartNum partition replacing it
+     * @return true if this caller replaced old partition
+     */
+    public boolean switchActivePartition(int slot, int oldPartNum, int newPartNum) {
+        if (!this.activePartitions.compareAndSet(slot, oldPartNum, newPartNum)) {
             return false;
-        }).findFirst();
-        // Update bit so thread is readable
-        updateBitToMakePartitionReadable(b);
+        }
+        this.successors.set(oldPartNum, newPartNum + 1);
+        this.sparePartitions.getAndAccumulate(newPartNum / Long.SIZE, 1L << newPartNum, (w, bit) -> w & ~bit);
+        // spares may already be reserved beyond new partition
+        this.nextAvailablePartition.updateAndGet(x -> Math.max(x, newPartNum + 1));
+        this.activatedPartitions.updateAndGet(x -> Math.max(x, newPartNum + 1));
+        // Update bit so partition is readable
+        updateBitToMakePartitionReadable(oldPartNum);
+        return true;
     }
 
     /**
      * @throws IOException
      */
-    private void commitPartitionOffset(short position) throws IOException {
-        ByteBuffer b = ByteBuffer.wrap(new byte[StorageManagerImpl.PAGE_SIZE]);
-        this.fileChannel.read(b, StorageManager.metaPageOffset());
-        // skip short byte for
-        b.position(0);
-        // make bit ZERO to ONE
-        updateBitToMakePartitionWritable(b, position);
+    void commitPartitionOffset(short position) throws IOException {
+        // make bit ONE to ZERO
+        if (updateBitToMakePartitionWritable(position)) {
+            publish();
+        }
     }
 
     /**
-     * make first ZERO bit to ONE --> making readable
+     * @return writer slot of partition or -1 if it is not active
+     */
+    public int activeSlotOf(int partNum) {
+        for (int i = 0; i < this.activePartitions.length(); i++) {
+            if (this.activePartitions.get(i) == partNum) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Follow switches since open from a partition to the partition its writer slot writes to now
      *
-     * @param b
+     * @return active partition or -1 if partition was not active since open
      */
-    private void updateBitToMakePartitionReadable(ByteBuffer b) {
-        // update the readable bit true
-        int position = Bits.getNextZeroBitFromPosition(READABLE_STARTING_POSITION, b.array());
-        if (position == Short.MIN_VALUE) {
-            System.out.println(" No partition to read ");
+    public int currentActivePartition(int partNum) {
+        int current = partNum;
+        while (current >= 0 && !isActivePartition(current)) {
+            current = this.successors.get(current) - 1;
         }
-        if (position > StorageManager.MAX_PARTITION_ALLOWED) {
-            throw new IndexOutOfBoundsException(" position of readable page bit is out of bound");
+        return current;
+    }
+
+    /**
+     * @return partition writer slot writes to
+     */
+    public int getActivePartition(int slot) {
+        return this.activePartitions.get(slot);
+    }
+
+    /**
+     * @return true if partition is one of active partitions
+     */
+    public boolean isActivePartition(int partNum) {
+        return activeSlotOf(partNum) >= 0;
+    }
+
+    /**
+     * @return true if partition is marked readable and not yet committed by readers
+     */
+    public boolean isReadablePartition(int partNum) {
+        return (this.readablePartitions.get(partNum / Long.SIZE) & 1L << partNum) != 0;
+    }
+
+    /**
+     * @return partitions marked readable in partition number order
+     */
+    public List<Integer> getReadablePartitions() {
+        List<Integer> readable = new ArrayList<>();
+        for (int i = 0; i < this.readablePartitions.length(); i++) {
+            long word = this.readablePartitions.get(i);
+            while (word != 0) {
+                readable.add(i * Long.SIZE + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return readable;
+    }
+
+    /**
+     * Reserve number of a new spare partition : spares of last run not made active first, then next available partition
+     *
+     * @return partition number or -1 if all partitions are allocated
+     */
+    public int reserveSparePartition() {
+        Integer leftover;
+        while ((leftover = this.leftoverSpares.poll()) != null) {
+            // journal replay may have made it active
+            if (isSparePartition(leftover)) {
+                return leftover;
+            }
+        }
+        int partNum = this.nextAvailablePartition.getAndUpdate(x -> x < StorageManager.MAX_PARTITION_ALLOWED ? x + 1 : x);
+        if (partNum >= StorageManager.MAX_PARTITION_ALLOWED) {
+            return -1;
         }
+        // set before a higher number can be made active, so a commit recording that one records this one too
+        this.sparePartitions.getAndAccumulate(partNum / Long.SIZE, 1L << partNum, (w, bit) -> w | bit);
+        return partNum;
+    }
+
+    /**
+     * @return true if partition is reserved as spare and not made active yet
+     */
+    public boolean isSparePartition(int partNum) {
+        return (this.sparePartitions.get(partNum / Long.SIZE) & 1L << partNum) != 0;
+    }
 
-        Bits.setBit(b.array(), position, Bits.Bit.ONE);
-        b.rewind();
+    /**
+     * @return highest partition made active + 1, partitions below it were written by writers
+     * unless they are spares
+     */
+    public int getActivatedPartitions() {
+        return this.activatedPartitions.get();
+    }
+
+    /**
+     * @return version of last committed meta slot
+     */
+    public long getVersion() {
+        this.commitLock.lock();
         try {
-            this.fileChannel.write(b, StorageManager.metaPageOffset());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            return version;
+        } finally {
+            this.commitLock.unlock();
+        }
+    }
+
+    /**
+     * mark partition readable, ZERO bit to ONE
+     */
+    private void updateBitToMakePartitionReadable(int position) {
+        if (position < 0 || position >= StorageManager.MAX_PARTITION_ALLOWED) {
+            System.out.println(" No partition to read ");
+            return;
         }
+        this.readablePartitions.getAndAccumulate(position / Long.SIZE, 1L << position, (w, bit) -> w | bit);
     }
 
     /**
-     * make first ONE bit to ZERO --> making writable again to recover
+     * make ONE bit to ZERO --> making writable again to recover
      *
-     * @param b
-     * @param position
+     * @param position partition number
+     * @return true if bit was changed
      */
-    public void updateBitToMakePartitionWritable(ByteBuffer b, short position) {
-        // update the readable bit true
-//        short pos = Bits.getNextOneBitFromPosition(READABLE_STARTING_POSITION, b.array());
-        if (Bits.getBit(b.array(), position) == Bits.Bit.ZERO) {
+    public boolean updateBitToMakePartitionWritable(short position) {
+        if (position < 0 || position >= StorageManager.MAX_PARTITION_ALLOWED) {
+            throw new IndexOutOfBoundsException(" position of readable page bit is out of bound");
+        }
+        long bit = 1L << position;
+        long previous = this.readablePartitions.getAndAccumulate(position / Long.SIZE, bit, (w, b) -> w & ~b);
+        if ((previous & bit) == 0) {
             System.out.println(" Partition is already in writable mode i.e. o");
+            return false;
         }
-        if (position == Short.MIN_VALUE) {
-            //
-            System.out.println(" No partition to read ");
+        return true;
+    }
+
+    /**
+     * Commit changes made so far, returns at once if another thread is committing (it commits them too)
+     */
+    public void publish() throws IOException {
+        this.publishedChanges.incrementAndGet();
+        while (this.committedChanges < this.publishedChanges.get() && this.commitLock.tryLock()) {
+            try {
+                long changes = this.publishedChanges.get();
+                commit();
+                this.committedChanges = changes;
+            } finally {
+                this.commitLock.unlock();
+            }
         }
-        if (position > StorageManager.MAX_PARTITION_ALLOWED) {
-            throw new IndexOutOfBoundsException(" position of readable page bit is out of bound");
+    }
+
+    /**
+     * Commit in-memory state now, waiting for a commit running in another thread, e.g. before journal records
+     * of switches are dropped. Switches are applied in memory before they are journaled, so the committed
+     * version covers every switch journaled so far, published or not.
+     */
+    public void sync() throws IOException {
+        this.commitLock.lock();
+        try {
+            long changes = this.publishedChanges.get();
+            commit();
+            this.committedChanges = changes;
+        } finally {
+            this.commitLock.unlock();
         }
+    }
 
-        Bits.setBit(b.array(), position, Bits.Bit.ZERO);
-        b.rewind();
+    /**
+     * Write in-memory state as next version into its slot and force it, no read of meta file,
+     * call with commitLock held
+     */
+    private void commit() throws IOException {
+        long next = this.version + 1;
+        ByteBuffer slot = PageBufferPool.shared().acquireZeroed();
         try {
-            this.fileChannel.write(b, StorageManager.metaPageOffset());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            slot.putInt(SLOT_MAGIC);
+            slot.putLong(next);
+            for (int i = 0; i < this.activePartitions.length(); i++) {
+                slot.putShort((short) this.activePartitions.get(i));
+            }
+            // reserved spares are not recorded
+            slot.putShort((short) this.activatedPartitions.get());
+            putBits(slot, this.readablePartitions);
+            putBits(slot, this.sparePartitions);
+            ByteBuffer body = slot.duplicate();
+            body.flip();
+            this.crc.reset();
+            this.crc.update(body);
+            slot.putInt((int) this.crc.getValue());
+            slot.clear();
+            long position = slotOffset(next);
+            while (slot.hasRemaining()) {
+                position += this.fileChannel.write(slot, position);
+            }
+            this.fileChannel.force(false);
+        } finally {
+            PageBufferPool.shared().release(slot);
         }
+        this.version = next;
     }
 
+    private static long slotOffset(long version) {
+        return StorageManager.metaPageOffset() + (version % SLOTS) * StorageManager.PAGE_SIZE;
+    }
+
+    /**
+     * Load slot at given index into in-memory state if it is valid and newer than current state
+     *
+     * @return true if loaded
+     */
+    private boolean loadSlot(int index, ByteBuffer b) throws IOException {
+        b.clear();
+        long position = StorageManager.metaPageOffset() + (long) index * StorageManager.PAGE_SIZE;
+        while (b.hasRemaining() && this.fileChannel.read(b, position + b.position()) >= 0) {
+            // read till slot is full or end of file
+        }
+        b.flip();
+        int bitsLength = StorageManager.MAX_PARTITION_ALLOWED / 8;
+        int bodyLength = Integer.BYTES + Long.BYTES + this.activePartitions.length() * Short.BYTES + Short.BYTES
+                + 2 * bitsLength;
+        if (b.remaining() < bodyLength + Integer.BYTES || b.getInt(0) != SLOT_MAGIC) {
+            return false;
+        }
+        // slot written before spare bits were added ends after readable bits
+        boolean spareBits = isValidBody(b, bodyLength);
+        if (!spareBits && !isValidBody(b, bodyLength - bitsLength)) {
+            System.out.println("meta slot " + index + " is torn or corrupt, skipped");
+            return false;
+        }
+        long slotVersion = b.getLong(Integer.BYTES);
+        if (slotVersion <= this.version) {
+            return false;
+        }
+        this.version = slotVersion;
+        b.position(Integer.BYTES + Long.BYTES);
+        for (int i = 0; i < this.activePartitions.length(); i++) {
+            this.activePartitions.set(i, b.getShort());
+        }
+        this.nextAvailablePartition = new AtomicInteger(b.getShort());
+        this.activatedPartitions.set(this.nextAvailablePartition.get());
+        getBits(b, this.readablePartitions);
+        if (spareBits) {
+            getBits(b, this.sparePartitions);
+        } else {
+            for (int i = 0; i < this.sparePartitions.length(); i++) {
+                this.sparePartitions.set(i, 0);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if crc32c following body of given length matches it
+     */
+    private boolean isValidBody(ByteBuffer b, int bodyLength) {
+        ByteBuffer body = b.duplicate();
+        body.position(0).limit(bodyLength);
+        this.crc.reset();
+        this.crc.update(body);
+        return b.getInt(bodyLength) == (int) this.crc.getValue();
+    }
+
+    /**
+     * Put bits in little endian bit order
+     */
+    private static void putBits(ByteBuffer b, AtomicLongArray bits) {
+        for (int i = 0; i < bits.length(); i++) {
+            long word = bits.get(i);
+            for (int k = 0; k < Long.BYTES; k++) {
+                b.put((byte) (word >>> (k * 8)));
+            }
+        }
+    }
+
+    private static void getBits(ByteBuffer b, AtomicLongArray bits) {
+        for (int i = 0; i < bits.length(); i++) {
+            long word = 0;
+            for (int k = 0; k < Long.BYTES; k++) {
+                word |= (b.get() & 0xFFL) << (k * 8);
+            }
+            bits.set(i, word);
+        }
+    }
+
+    /**
+     * Spares below next available partition are reserved again first, ones beyond it are reserved again
+     * from next available partition
+     */
+    private void loadLeftoverSpares() {
+        for (int partNum = 0; partNum < StorageManager.MAX_PARTITION_ALLOWED; partNum++) {
+            if (!isSparePartition(partNum)) {
+                continue;
+            }
+            if (partNum < this.nextAvailablePartition.get()) {
+                this.leftoverSpares.add(partNum);
+            } else {
+                this.sparePartitions.getAndAccumulate(partNum / Long.SIZE, 1L << partNum, (w, bit) -> w & ~bit);
+            }
+        }
+    }
+
+    /**
+     * Load meta page of old single page layout
+     */
+    private void loadLegacyPage(ByteBuffer b) throws IOException {
+        b.clear();
+        while (b.hasRemaining() && this.fileChannel.read(b, StorageManager.metaPageOffset() + b.position()) >= 0) {
+            // read till page is full or end of file
+        }
+        b.clear();
+        IntStream.range(0, this.activePartitions.length()).forEach(i -> {
+            // read each active partition
+            this.activePartitions.set(i, (short) (b.getShort() & 0xFFFF));
+        });
+        this.nextAvailablePartition = new AtomicInteger(b.getShort(NEXT_AV_PART_POSITION));
+        this.activatedPartitions.set(this.nextAvailablePartition.get());
+        byte[] page = new byte[StorageManager.PAGE_SIZE];
+        b.clear();
+        b.get(page);
+        for (int i = 0; i < StorageManager.MAX_PARTITION_ALLOWED; i++) {
+            if (Bits.getBit(page, READABLE_STARTING_POSITION + i) == Bits.Bit.ONE) {
+                updateBitToMakePartitionReadable(i);
+            }
+        }
+    }
 
     void init() {
         assert (this.fileChannel == null);
+        ByteBuffer b = PageBufferPool.shared().acquireZeroed();
         try {
             this.fileChannel = this.file.getChannel();
             long fileLength = this.file.length();
@@ -162,62 +490,54 @@ public class MetadataInfo implements AutoCloseable {
                 // if any failed in-between 1, 997, 998, 999)
                 // write master page to file
                 this.writeMetaPageForPartitionAtInit();
-            } else {
-                // load master and header pages
-                ByteBuffer b = ByteBuffer.wrap(new byte[StorageManager.PAGE_SIZE]);
-                // read master page in bytebuffer b
-                this.fileChannel.read(b, StorageManager.metaPageOffset());
-                // reset position to zero to read each header 16 bit info
-                b.position(0);
-                IntStream.range(0, 5).forEach(i -> {
-                    short value = (short) (b.getShort() & 0xFFFF);
-                    // 5 th position is next available partition index
-                    if (i == NEXT_AVAILABLE_PARTITION_INDEX) {
-                        nextAvailablePartition = new AtomicInteger(value);
-                    } else {
-                        // read each header information and populate masterPage array
-                        this.activePartitions[i] = value;
-                    }
-                });
-
+                return;
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private void writeMetaPageForPartitionAtInit() {
-        /**
-         * This is for metadata page
-         */
-        ByteBuffer buffer = ByteBuffer.wrap(new byte[StorageManagerImpl.PAGE_SIZE]);
-        IntStream.range(0, 5).forEach(i -> {
-            short value = (short) (i & 0xFFFF);
-            if (i == NEXT_AVAILABLE_PARTITION_INDEX) {
-                nextAvailablePartition = new AtomicInteger(value + 1);
-            } else {
-                activePartitions[i] = value;
+            boolean loaded = false;
+            for (int i = 0; i < SLOTS; i++) {
+                loaded |= loadSlot(i, b);
+            }
+            loadLeftoverSpares();
+            if (!loaded) {
+                // version 1 goes to slot 1, old page in slot 0 stays till it is durable
+                loadLegacyPage(b);
+                if (this.nextAvailablePartition.get() == 0) {
+                    // first commit of a new file was torn
+                    this.writeMetaPageForPartitionAtInit();
+                } else {
+                    publish();
+                }
             }
-            buffer.putShort((short) (i & 0xFFFF));
-        });
-        // position is 0 for master page
-        buffer.position(0);
-
-        try {
-            fileChannel.write(buffer, StorageManager.metaPageOffset());
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            PageBufferPool.shared().release(b);
         }
+    }
 
+    private void writeMetaPageForPartitionAtInit() throws IOException {
+        // partitions 0..3 are active on first start
+        IntStream.range(0, this.activePartitions.length()).forEach(i -> activePartitions.set(i, i));
+        nextAvailablePartition = new AtomicInteger(this.activePartitions.length());
+        activatedPartitions.set(this.activePartitions.length());
+        publish();
     }
 
+    /**
+     * @return snapshot of active partitions, one per writer slot
+     */
     public short[] getActivePartitions() {
-        return activePartitions;
+        short[] active = new short[this.activePartitions.length()];
+        for (int i = 0; i < active.length; i++) {
+            active[i] = (short) this.activePartitions.get(i);
+        }
+        return active;
     }
 
 
     @Override
     public void close() throws Exception {
-
+        if (this.fileChannel != null) {
+            this.fileChannel.close();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,295 @@
+package org.amity.storage;
+
+import org.amity.concurrency.factory.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append only journal of partition metadata changes
+ * <p>
+ * Header page bit flips (page allocated, page readable, offset committed) and partition switches
+ * are appended as fixed size records, header and master pages are written in place only at checkpoint :
+ * 1. records are buffered and written + forced by group commit sync of any partition, records appended
+ * after a page's data commit (page readable) are forced by {@link #commit(int)} as per durability policy
+ * 2. two journal files are used alternately, checkpoint moves appends to the other file,
+ * writes back header and master pages of all partitions and then truncates the previous file
+ * 3. recovery replays records of both files in lsn order, records set or clear a bit so replaying
+ * a record already reflected in header pages is harmless
+ * <p>
+ * Record : lsn (8) | type (1) | unused (1) | partition (2) | page (4) | arg (4) | crc32 of previous bytes (4)
+ */
+public class MetadataJournal implements AutoCloseable {
+    public static final int RECORD_SIZE = 24;
+    public static final String JOURNAL_FILE = "journal-";
+    private static final int BUFFER_RECORDS = 2048;
+    private static final String CHECKPOINT_THREAD = "jc-thread";
+
+    public enum RecordType {PAGE_ALLOCATED, PAGE_READABLE, OFFSET_COMMITTED, PARTITION_SWITCHED}
+
+    /**
+     * Writes back header and master pages of all partitions and forces them
+     */
+    public interface Checkpointer {
+        void writeBack() throws IOException;
+    }
+
+    public static final class Record {
+        private final long lsn;
+        private final RecordType type;
+        private final int partition;
+        private final int page;
+        private final int arg;
+
+        Record(long lsn, RecordType type, int partition, int page, int arg) {
+            this.lsn = lsn;
+            this.type = type;
+            this.partition = partition;
+            this.page = page;
+            this.arg = arg;
+        }
+
+        public long getLsn() {
+            return lsn;
+        }
+
+        public RecordType getType() {
+            return type;
+        }
+
+        public int getPartition() {
+            return partition;
+        }
+
+        public int getPage() {
+            return page;
+        }
+
+        /**
+         * @return old partition for PARTITION_SWITCHED
+         */
+        public int getArg() {
+            return arg;
+        }
+    }
+
+    private final FileChannel[] files = new FileChannel[2];
+    private final long[] fileLengths = new long[2];
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final long checkpointBytes;
+    private final long checkpointIntervalMillis;
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+    private final GroupCommitter committer;
+    private ScheduledThreadPoolExecutor checkpointScheduler;
+    private Checkpointer checkpointer;
+    private int active;
+    private long nextLsn = 1;
+    private boolean checkpointRequested;
+
+    public MetadataJournal(String dir, StorageConfig config) throws IOException {
+        for (int i = 0; i < files.length; i++) {
+            files[i] = FileChannel.open(Paths.get(dir, JOURNAL_FILE + i),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            fileLengths[i] = files[i].size();
+        }
+        this.checkpointBytes = config.getJournalCheckpointBytes();
+        this.checkpointIntervalMillis = config.getCheckpointIntervalMillis();
+        this.committer = new GroupCommitter(config, this::force);
+    }
+
+    /**
+     * Read valid records of both journal files, a torn or corrupt record ends its file
+     *
+     * @return records in lsn order
+     */
+    public synchronized List<Record> replay() throws IOException {
+        List<Record> records = new ArrayList<>();
+        for (FileChannel file : files) {
+            ByteBuffer b = ByteBuffer.allocate((int) (file.size() / RECORD_SIZE * RECORD_SIZE));
+            while (b.hasRemaining() && file.read(b, b.position()) >= 0) {
+                // read till buffer is full
+            }
+            b.flip();
+            long lastLsn = 0;
+            while (b.remaining() >= RECORD_SIZE) {
+                crc.reset();
+                ByteBuffer body = b.duplicate();
+                body.limit(body.position() + RECORD_SIZE - Integer.BYTES);
+                crc.update(body);
+                long lsn = b.getLong();
+                int type = b.get();
+                b.get();
+                int partition = b.getShort();
+                int page = b.getInt();
+                int arg = b.getInt();
+                int checksum = b.getInt();
+                if (checksum != (int) crc.getValue() || lsn <= lastLsn
+                        || type < 0 || type >= RecordType.values().length) {
+                    break;
+                }
+                lastLsn = lsn;
+                records.add(new Record(lsn, RecordType.values()[type], partition, page, arg));
+            }
+        }
+        records.sort(Comparator.comparingLong(Record::getLsn));
+        if (!records.isEmpty()) {
+            nextLsn = records.get(records.size() - 1).getLsn() + 1;
+        }
+        return records;
+    }
+
+    /**
+     * Drop all records i.e. recovered state is written back to header pages
+     */
+    public synchronized void reset() throws IOException {
+        buffer.clear();
+        for (int i = 0; i < files.length; i++) {
+            files[i].truncate(0);
+            files[i].force(true);
+            fileLengths[i] = 0;
+        }
+        active = 0;
+    }
+
+    /**
+     * Start checkpoints, every checkpointIntervalMillis if something was appended
+     * and as soon as active file reaches checkpointBytes
+     */
+    public synchronized void start(Checkpointer checkpointer) {
+        this.checkpointer = checkpointer;
+        this.checkpointScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                .setNamePrefix(CHECKPOINT_THREAD)
+                .setDaemon(true)
+                .build());
+        this.checkpointScheduler.scheduleWithFixedDelay(this::checkpointInBackground,
+                checkpointIntervalMillis, checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Append record, it is durable after next {@link #force()}
+     *
+     * @return lsn of record
+     */
+    public synchronized long append(RecordType type, int partition, int page, int arg) throws IOException {
+        if (buffer.remaining() < RECORD_SIZE) {
+            drain();
+        }
+        long lsn = nextLsn++;
+        int start = buffer.position();
+        buffer.putLong(lsn);
+        buffer.put((byte) type.ordinal());
+        buffer.put((byte) 0);
+        buffer.putShort((short) partition);
+        buffer.putInt(page);
+        buffer.putInt(arg);
+        ByteBuffer body = buffer.duplicate();
+        body.position(start);
+        body.limit(buffer.position());
+        crc.reset();
+        crc.update(body);
+        buffer.putInt((int) crc.getValue());
+
+        if (!checkpointRequested && checkpointScheduler != null
+                && fileLengths[active] + buffer.position() >= checkpointBytes) {
+            checkpointRequested = true;
+            checkpointScheduler.execute(this::checkpointInBackground);
+        }
+        return lsn;
+    }
+
+    /**
+     * Write buffered records and force them
+     */
+    public void force() throws IOException {
+        FileChannel file;
+        synchronized (this) {
+            drain();
+            file = files[active];
+        }
+        file.force(false);
+    }
+
+    /**
+     * Make records appended so far durable as per durability policy, concurrent callers share forces
+     *
+     * @param records records appended by caller
+     */
+    public void commit(int records) throws IOException {
+        committer.commit(records);
+    }
+
+    /**
+     * Move appends to the other file, write back header pages of all partitions and drop previous file
+     */
+    public void checkpoint() throws IOException {
+        checkpointLock.lock();
+        try {
+            int previous;
+            synchronized (this) {
+                checkpointRequested = false;
+                drain();
+                if (fileLengths[active] == 0) {
+                    return;
+                }
+                // records of other threads drained here are durable before a force() can only see the other file
+                files[active].force(false);
+                previous = active;
+                active = 1 - active;
+            }
+            // header pages now reflect every record of previous file
+            checkpointer.writeBack();
+            synchronized (this) {
+                files[previous].truncate(0);
+                files[previous].force(true);
+                fileLengths[previous] = 0;
+            }
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    private void checkpointInBackground() {
+        try {
+            checkpoint();
+        } catch (IOException | RuntimeException e) {
+            System.err.printf("Thread %s failed to checkpoint journal - %s%n", Thread.currentThread().getName(),
+                    e.getMessage());
+        }
+    }
+
+    // call with monitor held
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            fileLengths[active] += files[active].write(buffer, fileLengths[active]);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (checkpointScheduler != null) {
+            checkpointScheduler.shutdown();
+            checkpointScheduler.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        committer.close();
+        synchronized (this) {
+            drain();
+            for (FileChannel file : files) {
+                file.force(false);
+                file.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.amity.storage;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Exception thrown when some pages of a batch read/write failed,
+ * pages not listed in failures were read/written successfully.
+ */
+public class PageBatchException extends PageException {
+    private final Map<Integer, RuntimeException> failures;
+
+    /**
+     * @param message  batch operation
+     * @param failures index of page in batch request to its failure
+     */
+    public PageBatchException(String message, Map<Integer, RuntimeException> failures) {
+        super(message + " failed for " + failures.size() + " pages");
+        this.failures = Collections.unmodifiableMap(new TreeMap<>(failures));
+    }
+
+    public Map<Integer, RuntimeException> getFailures() {
+        return failures;
+    }
+}
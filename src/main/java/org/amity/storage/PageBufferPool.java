@@ -0,0 +1,112 @@
+package org.amity.storage;
+
+import org.amity.concurrency.factory.VirtualThreads;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Pool of direct, page aligned buffers of PAGE_SIZE shared by the storage layer
+ * <p>
+ * Heap byte[] pages are copied by the JDK through a temporary direct buffer on every I/O,
+ * pooled direct buffers go to the channel as is and are reused instead of allocated per operation.
+ * <p>
+ * 1. each platform thread keeps a few buffers of its own so acquire/release on the hot path is uncontended,
+ * virtual threads are short-lived so buffers kept by them would be lost with the thread
+ * 2. rest are kept in a bounded shared queue, buffers released beyond its capacity are dropped
+ * 3. when pool is empty buffers are carved out of a new aligned slab of SLAB_PAGES pages
+ */
+public class PageBufferPool {
+    private static final int THREAD_LOCAL_PAGES = 4;
+    private static final int SLAB_PAGES = 16;
+    private static final PageBufferPool SHARED = new PageBufferPool(StorageManager.DEFAULT_BUFFER_POOL_PAGES);
+    private static final ByteBuffer ZERO_PAGE = ByteBuffer.allocateDirect(StorageManager.PAGE_SIZE).asReadOnlyBuffer();
+
+    private final ArrayBlockingQueue<ByteBuffer> shared;
+    private final ThreadLocal<ArrayDeque<ByteBuffer>> local = ThreadLocal.withInitial(ArrayDeque::new);
+
+    public PageBufferPool(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("buffer pool capacity should be positive : " + capacity);
+        }
+        this.shared = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * @return pool used by partitions and metadata
+     */
+    public static PageBufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return read only page of zeros, position 0 and limit PAGE_SIZE
+     */
+    public static ByteBuffer zeroPage() {
+        return ZERO_PAGE.duplicate();
+    }
+
+    /**
+     * @return page buffer with position 0 and limit PAGE_SIZE, contents are undefined
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = null;
+        if (!VirtualThreads.isVirtual(Thread.currentThread())) {
+            buffer = local.get().pollFirst();
+        }
+        if (buffer == null) {
+            buffer = shared.poll();
+        }
+        if (buffer == null) {
+            buffer = allocateSlab();
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * @return page buffer filled with zeros, position 0 and limit PAGE_SIZE
+     */
+    public ByteBuffer acquireZeroed() {
+        ByteBuffer buffer = acquire();
+        buffer.put(zeroPage());
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Give buffer back, it must not be used by caller afterwards
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != StorageManager.PAGE_SIZE) {
+            return;
+        }
+        if (!VirtualThreads.isVirtual(Thread.currentThread())) {
+            ArrayDeque<ByteBuffer> mine = local.get();
+            if (mine.size() < THREAD_LOCAL_PAGES) {
+                mine.addFirst(buffer);
+                return;
+            }
+        }
+        shared.offer(buffer);
+    }
+
+    private ByteBuffer allocateSlab() {
+        // one extra page to align the slab on a page boundary
+        ByteBuffer slab = ByteBuffer.allocateDirect((SLAB_PAGES + 1) * StorageManager.PAGE_SIZE)
+                .alignedSlice(StorageManager.PAGE_SIZE);
+        ByteBuffer first = null;
+        for (int i = 0; i < SLAB_PAGES; i++) {
+            slab.limit((i + 1) * StorageManager.PAGE_SIZE);
+            slab.position(i * StorageManager.PAGE_SIZE);
+            ByteBuffer page = slab.slice();
+            if (first == null) {
+                first = page;
+            } else {
+                release(page);
+            }
+        }
+        return first;
+    }
+}
@@ -0,0 +1,140 @@
+package org.amity.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.zip.CRC32C;
+
+/**
+ * CRC32C of every data page of a partition, kept in a checksum file next to the offset file
+ * <p>
+ * Checksum file : 4 bytes per data page at pageNum * 4, whole file is held in memory.
+ * 1. a written page updates its checksum in memory, checksum blocks are written back and forced
+ * by partition sync right after data pages so a durable page has a durable checksum
+ * 2. checksum 0 means unknown (page written with checksums disabled) and is not verified
+ * 3. a page failing verification is remembered as corrupt till it is rewritten,
+ * other pages of the partition stay readable
+ */
+public class PageChecksums implements AutoCloseable {
+    public static final String CHECKSUM_FILE = "crc";
+    private static final int UNKNOWN = 0;
+    // checksum file is written back in blocks of a page i.e. 1024 checksums
+    private static final int BLOCK_SIZE = StorageManager.PAGE_SIZE;
+    private static final ThreadLocal<CRC32C> CRC = ThreadLocal.withInitial(CRC32C::new);
+
+    private final FileChannel channel;
+    private final ByteBuffer checksums;
+    private final BitSet dirtyBlocks = new BitSet();
+    private final BitSet corruptPages = new BitSet();
+    private final Object flushLock = new Object();
+
+    public PageChecksums(String fileName, int dataPages) throws IOException {
+        this.channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.checksums = ByteBuffer.allocateDirect(dataPages * Integer.BYTES);
+        while (this.checksums.hasRemaining() && this.channel.read(this.checksums, this.checksums.position()) >= 0) {
+            // read till buffer is full or end of file, missing checksums stay unknown
+        }
+        this.checksums.clear();
+    }
+
+    /**
+     * @param page PAGE_SIZE bytes from position, position is not changed
+     * @return CRC32C of page
+     */
+    public static int checksum(ByteBuffer page) {
+        ByteBuffer src = page.duplicate();
+        src.limit(src.position() + StorageManager.PAGE_SIZE);
+        CRC32C crc = CRC.get();
+        crc.reset();
+        crc.update(src);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Record checksum of a written page, it is durable after next {@link #force()}
+     */
+    public synchronized void update(int pageNum, int checksum) {
+        int position = pageNum * Integer.BYTES;
+        this.checksums.putInt(position, checksum);
+        this.dirtyBlocks.set(position / BLOCK_SIZE);
+        this.corruptPages.clear(pageNum);
+    }
+
+    /**
+     * @param page PAGE_SIZE bytes from position, position is not changed
+     * @return true if page matches its checksum or its checksum is unknown
+     */
+    public boolean verify(int pageNum, ByteBuffer page) {
+        int expected;
+        synchronized (this) {
+            expected = this.checksums.getInt(pageNum * Integer.BYTES);
+        }
+        return expected == UNKNOWN || expected == checksum(page);
+    }
+
+    public synchronized void markCorrupt(int pageNum) {
+        this.corruptPages.set(pageNum);
+    }
+
+    public synchronized boolean isCorrupt(int pageNum) {
+        return this.corruptPages.get(pageNum);
+    }
+
+    /**
+     * @return pages which failed verification since open and are not rewritten
+     */
+    public synchronized int corruptPages() {
+        return this.corruptPages.cardinality();
+    }
+
+    /**
+     * Write dirty checksum blocks and force them
+     */
+    public void force() throws IOException {
+        synchronized (flushLock) {
+            boolean written = false;
+            int block;
+            while ((block = nextDirtyBlock()) >= 0) {
+                ByteBuffer src = PageBufferPool.shared().acquire();
+                try {
+                    synchronized (this) {
+                        ByteBuffer slice = this.checksums.duplicate();
+                        slice.position(block * BLOCK_SIZE);
+                        slice.limit(Math.min(slice.capacity(), (block + 1) * BLOCK_SIZE));
+                        src.clear();
+                        src.put(slice);
+                        src.flip();
+                    }
+                    long position = (long) block * BLOCK_SIZE;
+                    while (src.hasRemaining()) {
+                        position += this.channel.write(src, position);
+                    }
+                } finally {
+                    PageBufferPool.shared().release(src);
+                }
+                written = true;
+            }
+            if (written) {
+                this.channel.force(false);
+            }
+        }
+    }
+
+    private synchronized int nextDirtyBlock() {
+        int block = this.dirtyBlocks.nextSetBit(0);
+        if (block >= 0) {
+            this.dirtyBlocks.clear(block);
+        }
+        return block;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        this.channel.close();
+    }
+}
@@ -0,0 +1,136 @@
+package org.amity.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Makes pages written by concurrent producers of one partition readable in page order
+ * <p>
+ * Producers reserve consecutive pages and may finish writing them in any order.
+ * 1. a written page at or past the watermark is recorded, pages are published only as a gap-free run
+ * starting at the watermark, so a reader never finds a page readable before an earlier reserved page
+ * 2. publishing is combined : whichever producer gets the publish lock publishes runs till the page
+ * at the watermark is not written yet, other producers return at once and their pages go in that run
+ * 3. a page before the watermark (rewrite of a published page) is published at once
+ * 4. a reserved page whose write failed is abandoned : the watermark moves past it without publishing it
+ * <p>
+ * A reserved page which is neither written nor abandoned holds back every later page.
+ */
+class PageCompletionTracker {
+
+    interface Publisher {
+        void publish(List<Integer> pageNums) throws IOException;
+    }
+
+    private final Publisher publisher;
+    private final ReentrantLock publishLock = new ReentrantLock();
+    // guarded by this
+    private final BitSet written = new BitSet();
+    private final BitSet abandoned = new BitSet();
+    private int watermark;
+
+    /**
+     * @param watermark first page not published yet i.e. first page reserved from now on
+     * @param publisher makes a run of pages readable, runs are passed in page order
+     */
+    PageCompletionTracker(int watermark, Publisher publisher) {
+        this.watermark = watermark;
+        this.publisher = publisher;
+    }
+
+    /**
+     * Record written pages and publish what became gap-free
+     */
+    void complete(List<Integer> pageNums) throws IOException {
+        List<Integer> rewritten = null;
+        synchronized (this) {
+            for (int pageNum : pageNums) {
+                if (pageNum < this.watermark) {
+                    if (rewritten == null) {
+                        rewritten = new ArrayList<>();
+                    }
+                    rewritten.add(pageNum);
+                } else {
+                    this.written.set(pageNum);
+                    // written again after an abandoned write
+                    this.abandoned.clear(pageNum);
+                }
+            }
+        }
+        if (rewritten != null) {
+            this.publisher.publish(rewritten);
+        }
+        publishRuns();
+    }
+
+    /**
+     * Give up reserved pages whose write failed, they are never published and later pages are not held back
+     */
+    void abandon(List<Integer> pageNums) throws IOException {
+        synchronized (this) {
+            for (int pageNum : pageNums) {
+                if (pageNum >= this.watermark) {
+                    this.written.set(pageNum);
+                    this.abandoned.set(pageNum);
+                }
+            }
+        }
+        publishRuns();
+    }
+
+    private void publishRuns() throws IOException {
+        while (hasRun() && this.publishLock.tryLock()) {
+            try {
+                List<Integer> run;
+                while ((run = nextRun()) != null) {
+                    if (!run.isEmpty()) {
+                        this.publisher.publish(run);
+                    }
+                }
+            } finally {
+                this.publishLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return first page not published yet
+     */
+    synchronized int getWatermark() {
+        return this.watermark;
+    }
+
+    /**
+     * @return written pages waiting for an earlier page
+     */
+    synchronized int pendingPages() {
+        return this.written.cardinality();
+    }
+
+    private synchronized boolean hasRun() {
+        return this.written.get(this.watermark);
+    }
+
+    /**
+     * @return pages of next gap-free run without abandoned ones, null if page at watermark is not written
+     */
+    private synchronized List<Integer> nextRun() {
+        if (!hasRun()) {
+            return null;
+        }
+        int end = this.written.nextClearBit(this.watermark);
+        List<Integer> run = new ArrayList<>(end - this.watermark);
+        for (int pageNum = this.watermark; pageNum < end; pageNum++) {
+            if (!this.abandoned.get(pageNum)) {
+                run.add(pageNum);
+            }
+        }
+        this.written.clear(this.watermark, end);
+        this.abandoned.clear(this.watermark, end);
+        this.watermark = end;
+        return run;
+    }
+}
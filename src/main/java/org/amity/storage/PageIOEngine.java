@@ -0,0 +1,72 @@
+package org.amity.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Page I/O over one partition file (prt or offset).
+ * <p>
+ * PartitionInfo never touches its FileChannel directly for page reads/writes,
+ * it goes through an engine so the way pages reach the file is pluggable:
+ * 1. MEMORY_MAPPED : file is mapped as MappedByteBuffer regions and a page read/write is a memory copy
+ * 2. FILE_CHANNEL  : positional FileChannel read/write i.e. one syscall per page (fallback)
+ */
+public interface PageIOEngine extends AutoCloseable {
+
+    enum Mode {FILE_CHANNEL, MEMORY_MAPPED}
+
+    /**
+     * Write all remaining bytes of src at given file position
+     *
+     * @param src      page contents
+     * @param position offset in OS file
+     */
+    void write(ByteBuffer src, long position) throws IOException;
+
+    /**
+     * Gathering write : srcs are written back to back starting at given file position
+     *
+     * @param srcs     contiguous pages contents
+     * @param position offset in OS file of first page
+     */
+    void write(ByteBuffer[] srcs, long position) throws IOException;
+
+    /**
+     * Read into remaining bytes of dst from given file position
+     *
+     * @param dst      page buffer
+     * @param position offset in OS file
+     */
+    void read(ByteBuffer dst, long position) throws IOException;
+
+    /**
+     * Scattering read : dsts are filled back to back starting at given file position
+     *
+     * @param dsts     contiguous pages buffers
+     * @param position offset in OS file of first page
+     */
+    void read(ByteBuffer[] dsts, long position) throws IOException;
+
+    /**
+     * Make everything written so far durable
+     */
+    void force() throws IOException;
+
+    @Override
+    void close() throws IOException;
+
+    static PageIOEngine open(FileChannel fileChannel, StorageConfig config) {
+        switch (config.getIoMode()) {
+            case MEMORY_MAPPED: {
+                return new MappedPageIOEngine(fileChannel, config.getMappedRegionPages());
+            }
+            case FILE_CHANNEL: {
+                return new FileChannelPageIOEngine(fileChannel);
+            }
+            default: {
+                throw new IllegalArgumentException("Unreachable code.");
+            }
+        }
+    }
+}
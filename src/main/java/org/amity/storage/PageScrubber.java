@@ -0,0 +1,134 @@
+package org.amity.storage;
+
+import org.amity.concurrency.factory.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Background verification of data pages of cold partitions against their checksums
+ * <p>
+ * Pages of partitions no writer is active on may not be read for a long time, scrubber finds
+ * corrupt pages before a reader does. Cold partitions not opened since startup are opened when their turn comes.
+ * 1. one low priority daemon thread walks allocated pages of every cold partition, then pauses scrubInterval
+ * 2. page reads are paced to scrubPagesPerSecond so scrubbing does not compete with readers and writers
+ * 3. a corrupt page is marked in its partition (reads of that page fail) and reported, scrubbing goes on
+ */
+public class PageScrubber implements AutoCloseable {
+    private static final String SCRUB_THREAD = "ps-thread";
+
+    private final Supplier<Collection<Integer>> coldPartitions;
+    private final IntFunction<PartitionInfo> partitions;
+    private final long nanosPerPage;
+    private final long intervalNanos;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private final LongAdder scrubbedPages = new LongAdder();
+    private final LongAdder corruptPages = new LongAdder();
+
+    /**
+     * @param coldPartitions numbers of partitions to scrub in a pass
+     * @param partitions     opens partition by number
+     */
+    public PageScrubber(Supplier<Collection<Integer>> coldPartitions, IntFunction<PartitionInfo> partitions,
+                        StorageConfig config) {
+        if (config.getScrubPagesPerSecond() <= 0) {
+            throw new IllegalArgumentException("scrub pages per second should be positive : "
+                    + config.getScrubPagesPerSecond());
+        }
+        this.coldPartitions = coldPartitions;
+        this.partitions = partitions;
+        this.nanosPerPage = TimeUnit.SECONDS.toNanos(1) / config.getScrubPagesPerSecond();
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getScrubIntervalMillis());
+        this.thread = new ThreadFactoryBuilder()
+                .setNamePrefix(SCRUB_THREAD)
+                .setDaemon(true)
+                .setPriority(Thread.MIN_PRIORITY)
+                .build()
+                .newThread(this::run);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * @return pages read and verified since start
+     */
+    public long getScrubbedPages() {
+        return scrubbedPages.sum();
+    }
+
+    /**
+     * @return corrupt pages found since start
+     */
+    public long getCorruptPages() {
+        return corruptPages.sum();
+    }
+
+    private void run() {
+        ByteBuffer buffer = PageBufferPool.shared().acquire();
+        try {
+            while (running) {
+                for (int partNum : coldPartitions.get()) {
+                    PartitionInfo pi;
+                    try {
+                        pi = partitions.apply(partNum);
+                    } catch (RuntimeException e) {
+                        // e.g. partition removed, next pass retries
+                        System.err.println("could not open partition " + partNum + " to scrub: " + e.getMessage());
+                        continue;
+                    }
+                    scrub(pi, buffer);
+                    if (!running) {
+                        return;
+                    }
+                }
+                LockSupport.parkNanos(this, intervalNanos);
+            }
+        } finally {
+            PageBufferPool.shared().release(buffer);
+        }
+    }
+
+    private void scrub(PartitionInfo pi, ByteBuffer buffer) {
+        long next = System.nanoTime();
+        int pages = StorageManager.MAX_HEADER_PAGES * StorageManager.DATA_PAGES_PER_HEADER;
+        for (int pageNum = 0; pageNum < pages && running; pageNum++) {
+            if (pi.isNotAllocatedPage(pageNum, true)) {
+                continue;
+            }
+            // I/O budget : one page every nanosPerPage
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+            }
+            next = Math.max(next, System.nanoTime() - nanosPerPage) + nanosPerPage;
+            try {
+                if (!pi.scrubPage(pageNum, buffer)) {
+                    corruptPages.increment();
+                    System.err.println("scrubber found checksum mismatch on page " + pageNum + " of partition "
+                            + pi.getPartitionNumber());
+                }
+                scrubbedPages.increment();
+            } catch (IOException | RuntimeException e) {
+                // partition closed or failing, next pass retries
+                System.err.println("could not scrub partition " + pi.getPartitionNumber() + ": " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+}
@@ -1,15 +1,27 @@
 package org.amity.storage;
 
-import org.amity.helper.Bits;
+import org.amity.concurrency.wait.WaitStrategy;
+import org.amity.helper.PageBitmap;
+import org.amity.helper.Pair;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
 /**
@@ -33,29 +45,115 @@ import java.util.stream.IntStream;
  * 1.2.2 else throw exception either all the partition are full or the reader is blocked/slowed down due
  * to client down/ system resource unavailability (go check metrics)
  * 2. Reader thread will check if any page is available to read i.e. 1
- * 2.1 If not then it will retry after configured time
+ * 2.1 If not then it will wait as per reader wait strategy, writer signals it once a page is readable
  * 2.2 else read the page and send to the connector/client and update the offset i.e turned the same bit to 0
+ * <p>
+ * Multi producer mode : several producer threads share a partition, a page is reserved with an atomic cursor
+ * (no header page scan) and page contents are written concurrently, written pages are made readable
+ * by {@link PageCompletionTracker} only in gap-free page order
  */
 public class PartitionInfo implements AutoCloseable {
     public static final int DATA_PAGE_BITS_HEADER = 1;
     private int partitionNumber;
+    /**
+     * number of ONE bits in writer/reader header pages, kept incrementally (+1/-1 on each bit transition)
+     * and recounted from header pages only on load or {@link #verifyMasterPages()}
+     * reader count is volatile as waiting readers check it without metadataLock
+     */
     private short masterPage;
-    private short readerMasterPage;
+    private volatile short readerMasterPage;
     private RandomAccessFile fileWriter;
     private FileChannel fileChannelWriter;
     private RandomAccessFile fileReader;
     private FileChannel fileChannelReader;
+    /**
+     * page I/O on offset file (writer master, header and data pages)
+     */
+    private PageIOEngine writerEngine;
+    /**
+     * page I/O on prt file (reader master and header pages)
+     */
+    private PageIOEngine readerEngine;
+    /**
+     * completion based data page I/O on offset file for async page API
+     */
+    private AsyncPageChannel asyncChannel;
+    /**
+     * one force per batch of written data pages
+     */
+    private GroupCommitter groupCommitter;
+    /**
+     * next readable pages fetched along with a missed page, null if disabled
+     */
+    private ReadAheadBuffer readAhead;
+    /**
+     * recently written pages served to readers without disk I/O, null if disabled
+     */
+    private RecentPageCache pageCache;
+    /**
+     * CRC32C per data page verified on reads from disk, null if page checksums are disabled
+     */
+    private PageChecksums checksums;
+    /**
+     * data pages packed as compressed frames, null for a partition storing raw pages
+     */
+    private CompressedPageStore compressedPages;
+    /**
+     * readers of this partition wait on it, signalled when pages become readable
+     */
+    private final WaitStrategy readerWait;
     private MetadataInfo metadataInfo;
+    private final StorageConfig config;
+    /**
+     * bit flips are journaled and header pages written back only at checkpoint, null to write them back
+     * on sync / metadataFlushThreshold
+     */
+    private final MetadataJournal journal;
+    /**
+     * This is configurable writer, one bit per data page (null till first allocation)
+     */
+    private List<PageBitmap> writerHeaderPages;
     /**
-     * This is configurable writer
+     * This is configurable reader, one bit per data page (null till first allocation)
      */
-    private List<byte[]> writerHeaderPages;
+    private List<PageBitmap> readerHeaderPages;
     /**
-     * This is configurable reader
+     * Write back cache of header and master pages
+     * <p>
+     * Bit flips only mark pages dirty, dirty pages are written on group commit sync,
+     * once metadataFlushThreshold flips are pending or on close.
+     * Ordering rule for crash consistency :
+     * 1. data pages are forced first
+     * 2. then dirty header pages are written so a header never points to a data page not on disk
+     * 3. master pages last, they are only a summary and recounted from header pages on load
+     */
+    private final Object metadataLock = new Object();
+    private final Object flushLock = new Object();
+    private final BitSet dirtyHeaderPages = new BitSet();
+    private final BitSet dirtyReaderHeaderPages = new BitSet();
+    private boolean masterPageDirty;
+    private boolean readerMasterPageDirty;
+    private int pendingMetadataUpdates;
+    /**
+     * next page to reserve in multi producer mode, -1 till first reservation positions it after allocated pages
      */
-    private List<byte[]> readerHeaderPages;
+    private final AtomicInteger reserveCursor = new AtomicInteger(-1);
+    private volatile PageCompletionTracker completionTracker;
+    /**
+     * pages allocated since open and not made readable or abandoned yet, guarded by metadataLock
+     */
+    private final BitSet unpublishedPages = new BitSet();
 
     public PartitionInfo(int partitionNumber, MetadataInfo metadataInfo) {
+        this(partitionNumber, metadataInfo, new StorageConfig());
+    }
+
+    public PartitionInfo(int partitionNumber, MetadataInfo metadataInfo, StorageConfig config) {
+        this(partitionNumber, metadataInfo, config, null);
+    }
+
+    public PartitionInfo(int partitionNumber, MetadataInfo metadataInfo, StorageConfig config,
+                         MetadataJournal journal) {
         this.partitionNumber = partitionNumber;
         // byte[] 64K bit 10101010101 -> here we took pair for one data page 10 -> 1 is page is writable not readable
         this.writerHeaderPages = new ArrayList<>();
@@ -67,12 +165,60 @@ public class PartitionInfo implements AutoCloseable {
         readerHeaderPages = new ArrayList<>();
         writerHeaderPages = new ArrayList<>();
         this.metadataInfo = metadataInfo;
+        this.config = config;
+        this.journal = journal;
+        this.readerWait = WaitStrategy.create(config.getReaderWaitMode(), config.getReaderSleepMillis());
     }
 
+    public int getPartitionNumber() {
+        return partitionNumber;
+    }
+
+    /**
+     * @return cache of recently written pages with its hit/miss/eviction counters, null if disabled
+     */
+    public RecentPageCache getPageCache() {
+        return pageCache;
+    }
+
+    /**
+     * @return checksums of data pages with corrupt pages found so far, null if disabled
+     */
+    public PageChecksums getChecksums() {
+        return checksums;
+    }
 
     @Override
     public void close() throws Exception {
-
+        if (this.asyncChannel != null) {
+            // async writes still commit through group committer
+            this.asyncChannel.awaitInFlight();
+        }
+        if (this.groupCommitter != null) {
+            this.groupCommitter.close();
+            // bit flips not followed by any data write (i.e. commit offset) are still pending
+            if (flushMetadata()) {
+                this.writerEngine.force();
+                this.readerEngine.force();
+            }
+        }
+        if (this.checksums != null) {
+            this.checksums.close();
+        }
+        if (this.compressedPages != null) {
+            this.compressedPages.close();
+        }
+        if (this.writerEngine != null) {
+            this.writerEngine.close();
+            this.readerEngine.close();
+        }
+        if (this.asyncChannel != null) {
+            this.asyncChannel.close();
+        }
+        if (this.fileWriter != null) {
+            this.fileWriter.close();
+            this.fileReader.close();
+        }
     }
 
     /**
@@ -94,6 +240,28 @@ public class PartitionInfo implements AutoCloseable {
             this.fileChannelWriter = this.fileWriter.getChannel();
 
             long fileLength = this.fileWriter.length();
+            // engines are opened after length check as mapping a region grows the file
+            this.writerEngine = PageIOEngine.open(this.fileChannelWriter, config);
+            this.readerEngine = PageIOEngine.open(this.fileChannelReader, config);
+            this.asyncChannel = new AsyncPageChannel(partFilePath + newPartNum + "/offset" + newPartNum, config);
+            this.groupCommitter = new GroupCommitter(config, this::syncPartition);
+            // compression mode is fixed when partition is created, index file marks a compressed partition
+            String indexFile = partFilePath + newPartNum + "/" + CompressedPageStore.INDEX_FILE + newPartNum;
+            if (CompressedPageStore.exists(indexFile) || (fileLength == 0 && config.getCompressionCodec() != null)) {
+                this.compressedPages = new CompressedPageStore(indexFile, this.writerEngine, config);
+            }
+            // mapped regions are already read ahead by the kernel page cache, compressed frames by frame cache
+            if (config.getReadAheadPages() > 0 && config.getIoMode() == PageIOEngine.Mode.FILE_CHANNEL
+                    && this.compressedPages == null) {
+                this.readAhead = new ReadAheadBuffer(config.getReadAheadPages());
+            }
+            if (config.getWriteCachePages() > 0) {
+                this.pageCache = new RecentPageCache(config.getWriteCachePages());
+            }
+            if (config.isPageChecksums()) {
+                this.checksums = new PageChecksums(partFilePath + newPartNum + "/" + PageChecksums.CHECKSUM_FILE
+                        + newPartNum, StorageManager.MAX_HEADER_PAGES * StorageManager.DATA_PAGES_PER_HEADER);
+            }
             if (fileLength == 0) {
                 IntStream.range(0, StorageManager.MAX_HEADER_PAGES).forEachOrdered(x -> {
                     // means new file write empty master page and fill header page with null
@@ -111,6 +279,8 @@ public class PartitionInfo implements AutoCloseable {
                 loadExistingMasterPage(fileLength, true);
                 // load reader master page and headers
                 loadExistingMasterPage(fileLength, false);
+                // master pages are only a summary of header pages, recount once on load
+                verifyMasterPages();
             }
 
         } catch (Exception ex) {
@@ -118,25 +288,36 @@ public class PartitionInfo implements AutoCloseable {
         }
     }
 
-    private void loadExistingPage(List<byte[]> headerPages,
-                                  FileChannel fileChannel,
+    private void loadExistingPage(List<PageBitmap> headerPages,
+                                  PageIOEngine engine,
                                   long position) {
         // load reader header page
-        byte[] headerPage = new byte[StorageManager.PAGE_SIZE];
-        headerPages.add(headerPage);
+        ByteBuffer headerPage = PageBufferPool.shared().acquireZeroed();
         try {
-            fileChannel.read(ByteBuffer.wrap(headerPage), position);
+            engine.read(headerPage, position);
+            headerPage.clear();
+            headerPages.add(PageBitmap.fromBuffer(headerPage, StorageManager.DATA_PAGES_PER_HEADER));
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            PageBufferPool.shared().release(headerPage);
         }
     }
 
     private void loadExistingMasterPage(long fileLength, boolean isWriter) throws IOException {
         // load master and header pages
-        ByteBuffer b = ByteBuffer.wrap(new byte[StorageManager.PAGE_SIZE]);
+        ByteBuffer b = PageBufferPool.shared().acquireZeroed();
+        try {
+            loadExistingMasterPage(fileLength, isWriter, b);
+        } finally {
+            PageBufferPool.shared().release(b);
+        }
+    }
+
+    private void loadExistingMasterPage(long fileLength, boolean isWriter, ByteBuffer b) throws IOException {
         if (isWriter) {
             // read master page in bytebuffer b
-            this.fileChannelWriter.read(b, StorageManager.masterPageOffset());
+            this.writerEngine.read(b, StorageManager.masterPageOffset());
             // reset position to zero to read each header 16 bit info
             b.position(0);
             // read each header information and populate masterPage array
@@ -147,17 +328,17 @@ public class PartitionInfo implements AutoCloseable {
                     this.writerHeaderPages.add(null);
                 } else {
                     // for each header page load from disk/file
-                    loadExistingPage(this.writerHeaderPages, this.fileChannelWriter, headerPageOffset(i));
+                    loadExistingPage(this.writerHeaderPages, this.writerEngine, headerPageOffset(i));
                 }
             });
         } else {
             // read master page in bytebuffer b
-            this.fileChannelWriter.read(b, StorageManager.masterPageOffset());
+            this.readerEngine.read(b, StorageManager.masterPageOffset());
             // reset position to zero to read each header 16 bit info
             b.position(0);
             // read each header information and populate masterPage array
             this.readerMasterPage = (short) (b.getShort() & 0xFFFF);
-            loadExistingPage(this.readerHeaderPages, this.fileChannelReader, readerHeaderPageOffset(0));
+            loadExistingPage(this.readerHeaderPages, this.readerEngine, readerHeaderPageOffset(0));
         }
     }
 
@@ -199,11 +380,230 @@ public class PartitionInfo implements AutoCloseable {
         return StorageManager.PAGE_SIZE + (long) headerIndex * StorageManager.PAGE_SIZE;
     }
 
+    /**
+     * Recount master pages from header pages and rewrite them if they drifted
+     * (i.e. crash between header and master page write)
+     *
+     * @return true if master pages were consistent with header pages
+     */
+    public boolean verifyMasterPages() {
+        synchronized (metadataLock) {
+            return recountMasterPages();
+        }
+    }
+
+    private boolean recountMasterPages() {
+        short writerCount = countBits(this.writerHeaderPages);
+        short readerCount = countBits(this.readerHeaderPages);
+        boolean consistent = writerCount == this.masterPage && readerCount == this.readerMasterPage;
+        if (!consistent) {
+            System.err.println("partition " + partitionNumber + " master pages " + this.masterPage + "/"
+                    + this.readerMasterPage + " recounted to " + writerCount + "/" + readerCount);
+            this.masterPage = writerCount;
+            this.readerMasterPage = readerCount;
+            this.writeOrReadMasterPageForPartition(this.masterPage, true);
+            this.writeOrReadMasterPageForPartition(this.readerMasterPage, false);
+        }
+        return consistent;
+    }
+
+    private static short countBits(List<PageBitmap> headerPages) {
+        int count = 0;
+        for (PageBitmap headerPage : headerPages) {
+            if (headerPage != null) {
+                count += headerPage.cardinality();
+            }
+        }
+        return (short) count;
+    }
+
+    /**
+     * Group commit sync : force data pages and then persist dirty metadata as per ordering rule,
+     * with a journal only journal records are forced and header pages wait for checkpoint
+     */
+    private void syncPartition() throws IOException {
+        forceDataPages();
+        this.asyncChannel.force();
+        if (this.checksums != null) {
+            this.checksums.force();
+        }
+        if (this.journal != null) {
+            this.journal.force();
+            return;
+        }
+        if (flushMetadata()) {
+            this.writerEngine.force();
+            this.readerEngine.force();
+        }
+    }
+
+    /**
+     * Force data pages, staged pages of a compressed partition are framed first
+     */
+    private void forceDataPages() throws IOException {
+        if (this.compressedPages != null) {
+            this.compressedPages.sync();
+        } else {
+            this.writerEngine.force();
+        }
+    }
+
+    /**
+     * Mark header page and its master page dirty, call with metadataLock held
+     *
+     * @return true if enough updates are pending to flush
+     */
+    private boolean markDirty(int headerIndex, boolean isWriter) {
+        if (isWriter) {
+            this.dirtyHeaderPages.set(headerIndex);
+            this.masterPageDirty = true;
+        } else {
+            this.dirtyReaderHeaderPages.set(headerIndex);
+            this.readerMasterPageDirty = true;
+        }
+        // journaled flips are written back by checkpoint
+        return ++this.pendingMetadataUpdates >= config.getMetadataFlushThreshold() && this.journal == null;
+    }
+
+    /**
+     * Threshold flush of header pages (partition without journal) : data pages are forced first,
+     * so a header page never reaches disk before the data it points to
+     */
+    private void flushMetadataAfterData() throws IOException {
+        forceDataPages();
+        this.asyncChannel.force();
+        flushMetadata();
+    }
+
+    /**
+     * Checkpoint of journal : force data pages and then write back and force header and master pages
+     */
+    void checkpoint() throws IOException {
+        forceDataPages();
+        this.asyncChannel.force();
+        if (this.checksums != null) {
+            this.checksums.force();
+        }
+        if (flushMetadata()) {
+            this.writerEngine.force();
+            this.readerEngine.force();
+        }
+    }
+
+    /**
+     * Apply journal records of this partition in lsn order on header and master pages loaded from disk
+     *
+     * @param records records of this partition
+     */
+    void applyJournalRecords(List<MetadataJournal.Record> records) {
+        synchronized (metadataLock) {
+            for (MetadataJournal.Record record : records) {
+                int headerIndex = record.getPage() / StorageManager.DATA_PAGES_PER_HEADER;
+                int pageIndex = record.getPage() % StorageManager.DATA_PAGES_PER_HEADER;
+                boolean isWriter = record.getType() == MetadataJournal.RecordType.PAGE_ALLOCATED;
+                List<PageBitmap> headerPages = isWriter ? this.writerHeaderPages : this.readerHeaderPages;
+                if (headerPages.get(headerIndex) == null) {
+                    headerPages.set(headerIndex, new PageBitmap(StorageManager.DATA_PAGES_PER_HEADER));
+                }
+                PageBitmap headerPage = headerPages.get(headerIndex);
+                switch (record.getType()) {
+                    case PAGE_ALLOCATED: {
+                        if (headerPage.set(pageIndex)) {
+                            this.masterPage++;
+                        }
+                        break;
+                    }
+                    case PAGE_READABLE: {
+                        if (headerPage.set(pageIndex)) {
+                            this.readerMasterPage++;
+                        }
+                        break;
+                    }
+                    case OFFSET_COMMITTED: {
+                        if (headerPage.clear(pageIndex)) {
+                            this.readerMasterPage--;
+                        }
+                        break;
+                    }
+                    default: {
+                        throw new IllegalArgumentException("not a partition record : " + record.getType());
+                    }
+                }
+                markDirty(headerIndex, isWriter);
+            }
+        }
+    }
+
+    private void journal(MetadataJournal.RecordType type, int pageNum) throws IOException {
+        if (this.journal != null) {
+            this.journal.append(type, this.partitionNumber, pageNum, 0);
+        }
+    }
+
+    /**
+     * Write dirty header pages and then dirty master pages, without force
+     *
+     * @return true if anything was written
+     */
+    private boolean flushMetadata() throws IOException {
+        synchronized (flushLock) {
+            List<Pair<Integer, ByteBuffer>> headerPages = new ArrayList<>();
+            List<Pair<Integer, ByteBuffer>> readerPages = new ArrayList<>();
+            short master;
+            short readerMaster;
+            boolean writeMaster;
+            boolean writeReaderMaster;
+            // snapshot under metadata lock, write outside so allocation is not blocked on I/O
+            synchronized (metadataLock) {
+                if (this.pendingMetadataUpdates == 0) {
+                    return false;
+                }
+                snapshot(this.writerHeaderPages, this.dirtyHeaderPages, headerPages);
+                snapshot(this.readerHeaderPages, this.dirtyReaderHeaderPages, readerPages);
+                master = this.masterPage;
+                readerMaster = this.readerMasterPage;
+                writeMaster = this.masterPageDirty;
+                writeReaderMaster = this.readerMasterPageDirty;
+                this.masterPageDirty = false;
+                this.readerMasterPageDirty = false;
+                this.pendingMetadataUpdates = 0;
+            }
+            try {
+                for (Pair<Integer, ByteBuffer> page : headerPages) {
+                    this.writerEngine.write(page.getRight(), PartitionInfo.headerPageOffset(page.getLeft()));
+                }
+                for (Pair<Integer, ByteBuffer> page : readerPages) {
+                    this.readerEngine.write(page.getRight(), PartitionInfo.readerHeaderPageOffset(page.getLeft()));
+                }
+            } finally {
+                headerPages.forEach(page -> PageBufferPool.shared().release(page.getRight()));
+                readerPages.forEach(page -> PageBufferPool.shared().release(page.getRight()));
+            }
+            if (writeMaster) {
+                this.writeOrReadMasterPageForPartition(master, true);
+            }
+            if (writeReaderMaster) {
+                this.writeOrReadMasterPageForPartition(readerMaster, false);
+            }
+            return true;
+        }
+    }
+
+    private static void snapshot(List<PageBitmap> headerPages, BitSet dirty, List<Pair<Integer, ByteBuffer>> out) {
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            ByteBuffer headerBytes = PageBufferPool.shared().acquireZeroed();
+            headerPages.get(i).writeTo(headerBytes);
+            headerBytes.clear();
+            out.add(new Pair<>(i, headerBytes));
+        }
+        dirty.clear();
+    }
+
     /**
      * This is either for master of writer or reader page
      */
     private void writeOrReadMasterPageForPartition(short page, boolean isWriter) {
-        ByteBuffer buffer = ByteBuffer.wrap(new byte[StorageManager.PAGE_SIZE]);
+        ByteBuffer buffer = PageBufferPool.shared().acquireZeroed();
 
         // insert 16 bit which represent
         // A 16-bit integer can store 2^16 (or 65,536) distinct values.
@@ -246,12 +646,14 @@ public class PartitionInfo implements AutoCloseable {
 
         try {
             if (isWriter) {
-                fileChannelWriter.write(buffer, StorageManager.masterPageOffset());
+                writerEngine.write(buffer, StorageManager.masterPageOffset());
             } else {
-                fileChannelReader.write(buffer, StorageManager.masterPageOffset());
+                readerEngine.write(buffer, StorageManager.masterPageOffset());
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            PageBufferPool.shared().release(buffer);
         }
 
     }
@@ -260,19 +662,44 @@ public class PartitionInfo implements AutoCloseable {
      * Writes to a data page. Assumes that the partition lock is held.
      * Validate : if bit group is 1,0 (W, N-R) then only allow
      * <p>
-     * Update
+     * Page is handed to group commit, caller returns once page is durable as per durability policy
      *
      * @param pageNum data page number to write to
      * @param buf     input buffer with new contents of page - assumed to be page size
      */
     public void writePage(int pageNum, byte[] buf) throws IOException {
+        writePage(pageNum, ByteBuffer.wrap(buf));
+    }
+
+    /**
+     * Writes to a data page from a (preferably direct) buffer, see {@link #writePage(int, byte[])}
+     *
+     * @param pageNum data page number to write to
+     * @param buffer  PAGE_SIZE bytes remaining, position is advanced past the page
+     */
+    public void writePage(int pageNum, ByteBuffer buffer) throws IOException {
         if (isNotAllocatedPage(pageNum, true)) {
             throw new PageException("page " + pageNum + " is not allocated");
         }
 
-        ByteBuffer buffer = ByteBuffer.wrap(buf);
-        this.fileChannelWriter.write(buffer, PartitionInfo.getDataPageOffset(pageNum));
-        this.fileChannelWriter.force(false);
+        ByteBuffer page = buffer.duplicate();
+        int checksum = this.checksums != null ? PageChecksums.checksum(page) : 0;
+        if (this.compressedPages != null) {
+            this.compressedPages.stage(pageNum, buffer);
+        } else {
+            this.writerEngine.write(buffer, PartitionInfo.getDataPageOffset(pageNum));
+        }
+        if (this.readAhead != null) {
+            // rewrite of a readable page, window may hold its old contents
+            this.readAhead.invalidate(pageNum);
+        }
+        if (this.checksums != null) {
+            this.checksums.update(pageNum, checksum);
+        }
+        if (this.pageCache != null) {
+            this.pageCache.put(pageNum, page);
+        }
+        this.groupCommitter.commit(1);
 
         // TODO check if we want to maintain dirty page table for memory
         // I don't we need it as single thread is going to access this partition
@@ -281,6 +708,112 @@ public class PartitionInfo implements AutoCloseable {
     }
 
 
+    /**
+     * Async {@link #writePage(int, ByteBuffer)}, many writes of a partition can be in flight
+     * and their group commits share forces
+     *
+     * @param pageNum data page number to write to
+     * @param buffer  PAGE_SIZE bytes remaining, must not be touched till future completes
+     * @return future completed once page is written as per durability policy
+     */
+    public CompletableFuture<Void> writePageAsync(int pageNum, ByteBuffer buffer) {
+        if (isNotAllocatedPage(pageNum, true)) {
+            return CompletableFuture.failedFuture(new PageException("page " + pageNum + " is not allocated"));
+        }
+        if (this.compressedPages != null) {
+            // staging is a memory copy, group commit waits on commit pool like an async write
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    writePage(pageNum, buffer);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, AsyncPageChannel.commitExecutor(config));
+        }
+        ByteBuffer page = buffer.duplicate();
+        int checksum = this.checksums != null ? PageChecksums.checksum(page) : 0;
+        // commit runs on commit pool and holds the in-flight slot, close waits for it
+        return this.asyncChannel.write(buffer, PartitionInfo.getDataPageOffset(pageNum), () -> {
+            if (this.readAhead != null) {
+                this.readAhead.invalidate(pageNum);
+            }
+            if (this.checksums != null) {
+                this.checksums.update(pageNum, checksum);
+            }
+            if (this.pageCache != null) {
+                this.pageCache.put(pageNum, page);
+            }
+            this.groupCommitter.commit(1);
+        });
+    }
+
+    /**
+     * Writes a batch of data pages of this partition
+     * <p>
+     * Pages are sorted by file offset and each run of contiguous data pages goes as one gathering write,
+     * then the whole batch is made durable by a single group commit
+     *
+     * @param pageNums data page numbers to write to
+     * @param bufs     page sized buffers in same order as pageNums
+     */
+    public void writePages(List<Integer> pageNums, List<byte[]> bufs) throws IOException {
+        if (pageNums.size() != bufs.size()) {
+            throw new PageException("pages request to write " + pageNums.size() + ":: not equal to buffersize :  " + bufs.size());
+        }
+        int size = pageNums.size();
+        if (size == 0) {
+            return;
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            if (isNotAllocatedPage(pageNums.get(i), true)) {
+                throw new PageException("page " + pageNums.get(i) + " is not allocated");
+            }
+            order[i] = i;
+        }
+        // stable sort so a page repeated in batch is written in request order
+        Arrays.sort(order, Comparator.comparingInt(pageNums::get));
+
+        int start = 0;
+        for (int i = 1; i <= size; i++) {
+            if (i == size || getDataPageOffset(pageNums.get(order[i]))
+                    != getDataPageOffset(pageNums.get(order[i - 1])) + StorageManager.PAGE_SIZE) {
+                ByteBuffer[] run = new ByteBuffer[i - start];
+                int[] runChecksums = new int[run.length];
+                for (int k = 0; k < run.length; k++) {
+                    run[k] = ByteBuffer.wrap(bufs.get(order[start + k]));
+                    if (this.checksums != null) {
+                        runChecksums[k] = PageChecksums.checksum(run[k]);
+                    }
+                }
+                if (this.compressedPages != null) {
+                    for (int k = 0; k < run.length; k++) {
+                        this.compressedPages.stage(pageNums.get(order[start + k]), run[k]);
+                    }
+                } else {
+                    this.writerEngine.write(run, getDataPageOffset(pageNums.get(order[start])));
+                }
+                if (this.readAhead != null) {
+                    for (int k = 0; k < run.length; k++) {
+                        this.readAhead.invalidate(pageNums.get(order[start + k]));
+                    }
+                }
+                if (this.checksums != null) {
+                    for (int k = 0; k < run.length; k++) {
+                        this.checksums.update(pageNums.get(order[start + k]), runChecksums[k]);
+                    }
+                }
+                if (this.pageCache != null) {
+                    for (int k = 0; k < run.length; k++) {
+                        this.pageCache.put(pageNums.get(order[start + k]), ByteBuffer.wrap(bufs.get(order[start + k])));
+                    }
+                }
+                start = i;
+            }
+        }
+        this.groupCommitter.commit(size);
+    }
+
     /**
      * (2 (for master and header page)  * pagesize) + (100 * pagesize)
      * (this is for skipping 2nd header page - pageNum / StorageManagerImpl.DATA_PAGES_PER_HEADER)
@@ -293,7 +826,7 @@ public class PartitionInfo implements AutoCloseable {
         return (long) (2 + pageNum / StorageManagerImpl.DATA_PAGES_PER_HEADER + pageNum) * StorageManagerImpl.PAGE_SIZE;
     }
 
-    private boolean isNotAllocatedPage(int pageNum, boolean isWriter) {
+    boolean isNotAllocatedPage(int pageNum, boolean isWriter) {
         // 32k data pages per header
         // pageNum < 32k have partition 1 for virtual pageNum 1000000064
         int headerIndex = pageNum / StorageManagerImpl.DATA_PAGES_PER_HEADER;
@@ -311,8 +844,8 @@ public class PartitionInfo implements AutoCloseable {
             return true;
         }
 
-        return isWriter ? Bits.getBit(writerHeaderPages.get(headerIndex), dataPageIndex) == Bits.Bit.ZERO
-                : Bits.getBit(readerHeaderPages.get(headerIndex), dataPageIndex) == Bits.Bit.ZERO;
+        PageBitmap headerPage = isWriter ? writerHeaderPages.get(headerIndex) : readerHeaderPages.get(headerIndex);
+        return headerPage == null || !headerPage.get(dataPageIndex);
     }
 
 //    private boolean isReadablePage(int pageNum) {
@@ -334,71 +867,392 @@ public class PartitionInfo implements AutoCloseable {
 //    }
 
     public void readPage(int pageNum, byte[] buf) throws IOException {
+        readPage(pageNum, ByteBuffer.wrap(buf));
+    }
+
+    /**
+     * Reads a readable data page into a (preferably direct) buffer
+     *
+     * @param pageNum data page number to read
+     * @param b       PAGE_SIZE bytes remaining, position is advanced past the page
+     */
+    public void readPage(int pageNum, ByteBuffer b) throws IOException {
         // check if partition is readed fully
         // if full then update partition metadata and mark this partition bit zero
         if (readerMasterPage == Short.MAX_VALUE) {
-            ByteBuffer bb = ByteBuffer.wrap(buf);
-            metadataInfo.updateBitToMakePartitionWritable(bb, (short) partitionNumber);
+            metadataInfo.commitPartitionOffset((short) partitionNumber);
         }
 
         if (this.isNotAllocatedPage(pageNum, false)) {
             throw new PageException("page " + pageNum + " is not allocated");
         }
 
-        ByteBuffer b = ByteBuffer.wrap(buf);
-        this.fileChannelWriter.read(b, PartitionInfo.getDataPageOffset(pageNum));
+        if (this.checksums != null && this.checksums.isCorrupt(pageNum)) {
+            throw corruptPage(pageNum);
+        }
+
+        // cached pages are copies of written buffers, only pages coming from disk are verified
+        if (this.pageCache != null && this.pageCache.copyTo(pageNum, b)) {
+            return;
+        }
+        ByteBuffer page = b.duplicate();
+        if (this.readAhead != null) {
+            if (this.readAhead.copyTo(pageNum, b)) {
+                verifyChecksum(pageNum, page);
+                return;
+            }
+            // miss : fetch requested page with next readable pages in one read
+            int run = readableRun(pageNum, this.readAhead.capacity());
+            if (run > 1) {
+                this.readAhead.fill(pageNum, run, this.writerEngine, PartitionInfo.getDataPageOffset(pageNum));
+                this.readAhead.copyTo(pageNum, b);
+                verifyChecksum(pageNum, page);
+                return;
+            }
+        }
+        readDataPage(pageNum, b);
+        verifyChecksum(pageNum, page);
     }
 
-    // update header page : commit offset (reading is done) for page i.e. update reader page bit to 0
-    // and update the master page
-    public void commitOffsetForPage(int pageNum) throws IOException {
-        int headerIndex = pageNum / StorageManagerImpl.DATA_PAGES_PER_HEADER;
-        int pageIndex = pageNum % StorageManagerImpl.DATA_PAGES_PER_HEADER;
+    /**
+     * Read page from offset file, decompressing its frame for a compressed partition
+     */
+    private void readDataPage(int pageNum, ByteBuffer b) throws IOException {
+        if (this.compressedPages != null) {
+            this.compressedPages.read(pageNum, b);
+        } else {
+            this.writerEngine.read(b, PartitionInfo.getDataPageOffset(pageNum));
+        }
+    }
 
-        byte[] headerBytes = readerHeaderPages.get(StorageManager.MAX_HEADER_PAGES - 1);
-        if (headerBytes == null) {
-            throw new NoSuchElementException("header page : " + headerIndex + " is empty");
+    /**
+     * @param page page as read from disk, position is not changed
+     * @throws PageException if page does not match its checksum, page is failed till it is rewritten
+     */
+    private void verifyChecksum(int pageNum, ByteBuffer page) {
+        if (this.checksums != null && !this.checksums.verify(pageNum, page)) {
+            this.checksums.markCorrupt(pageNum);
+            throw corruptPage(pageNum);
         }
+    }
+
+    private PageException corruptPage(int pageNum) {
+        return new PageException("checksum mismatch on page " + pageNum + " of partition " + partitionNumber);
+    }
+
+    /**
+     * Verify a cold page against its checksum, called by the scrubber
+     *
+     * @param pageNum data page number
+     * @param buffer  page sized scratch buffer
+     * @return false if page is newly found corrupt
+     */
+    boolean scrubPage(int pageNum, ByteBuffer buffer) throws IOException {
+        if (this.checksums == null || this.checksums.isCorrupt(pageNum) || isNotAllocatedPage(pageNum, true)) {
+            return true;
+        }
+        for (int attempt = 0; attempt < 2; attempt++) {
+            buffer.clear();
+            readDataPage(pageNum, buffer);
+            buffer.clear();
+            // a page rewritten concurrently may be read before its new checksum is recorded, read once more
+            if (this.checksums.verify(pageNum, buffer)) {
+                return true;
+            }
+        }
+        this.checksums.markCorrupt(pageNum);
+        return false;
+    }
 
-        Bits.Bit bit = Bits.getBit(headerBytes, pageIndex * DATA_PAGE_BITS_HEADER);
-        if (bit == Bits.Bit.ZERO) {
-            // TODO warn
-            throw new PageException("already commit offset for this page with : " + bit);
+    /**
+     * Async {@link #readPage(int, ByteBuffer)}, read ahead window is served without I/O but not refilled
+     *
+     * @param pageNum data page number to read
+     * @param b       PAGE_SIZE bytes remaining, must not be touched till future completes
+     * @return future completed once page is read
+     */
+    public CompletableFuture<Void> readPageAsync(int pageNum, ByteBuffer b) {
+        if (readerMasterPage == Short.MAX_VALUE) {
+            try {
+                metadataInfo.commitPartitionOffset((short) partitionNumber);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
         }
 
-        // mark readable byte as zero
-        Bits.setBit(headerBytes, pageIndex * DATA_PAGE_BITS_HEADER + 1, Bits.Bit.ZERO);
-        // update master page with counting WR or 10 pages
-        // this.masterPage = Bits.countOnMode(headerBytes, Bits.Mode.WR);
+        if (this.isNotAllocatedPage(pageNum, false)) {
+            return CompletableFuture.failedFuture(new PageException("page " + pageNum + " is not allocated"));
+        }
 
-        // Number of 1's bit in byte array
-        this.masterPage = (short) Bits.countBits(headerBytes);
+        if (this.checksums != null && this.checksums.isCorrupt(pageNum)) {
+            return CompletableFuture.failedFuture(corruptPage(pageNum));
+        }
 
-        this.writeOrReadMasterPageForPartition(this.masterPage, false);
-        this.writeHeaderPage(headerIndex);
+        if (this.pageCache != null && this.pageCache.copyTo(pageNum, b)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        ByteBuffer page = b.duplicate();
+        if (this.readAhead != null && this.readAhead.copyTo(pageNum, b)) {
+            try {
+                verifyChecksum(pageNum, page);
+            } catch (PageException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        if (this.compressedPages != null) {
+            // frame decompression is cpu bound, done on completion pool
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    this.compressedPages.read(pageNum, b);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+                verifyChecksum(pageNum, page);
+            }, AsyncPageChannel.executor(config));
+        }
+        return this.asyncChannel.read(b, PartitionInfo.getDataPageOffset(pageNum))
+                .thenRun(() -> verifyChecksum(pageNum, page));
     }
 
     /**
-     * Writes a header page to disk.
+     * Sends readable data pages straight from offset file to target with {@link FileChannel#transferTo},
+     * pages are not copied through user space buffers
+     * <p>
+     * Pages go in request order, adjacent pages in one transfer.
+     * Offset of a page is committed only once the page is completely transferred, so on failure
+     * pages sent before stay committed and the rest stay readable.
+     * Pages are not verified against their checksums as they never reach user space,
+     * only pages already found corrupt are refused (scrubber covers the rest).
      *
-     * @param headerIndex which header page
+     * @param pageNums readable data pages, each at most once
+     * @param target   channel to send pages to e.g. client socket
+     * @return bytes transferred
+     * @throws PageException if target stops accepting bytes (non blocking channel) before all pages are sent
+     */
+    public long transferPages(List<Integer> pageNums, WritableByteChannel target) throws IOException {
+        if (readerMasterPage == Short.MAX_VALUE) {
+            metadataInfo.commitPartitionOffset((short) partitionNumber);
+        }
+        BitSet requested = new BitSet();
+        for (int pageNum : pageNums) {
+            if (isNotAllocatedPage(pageNum, false)) {
+                throw new PageException("page " + pageNum + " is not allocated");
+            }
+            if (requested.get(pageNum)) {
+                throw new PageException("page " + pageNum + " is requested twice");
+            }
+            if (this.checksums != null && this.checksums.isCorrupt(pageNum)) {
+                throw corruptPage(pageNum);
+            }
+            requested.set(pageNum);
+        }
+
+        if (this.compressedPages != null) {
+            return transferCompressedPages(pageNums, target);
+        }
+        long total = 0;
+        int size = pageNums.size();
+        int start = 0;
+        for (int i = 1; i <= size; i++) {
+            if (i == size || getDataPageOffset(pageNums.get(i))
+                    != getDataPageOffset(pageNums.get(i - 1)) + StorageManager.PAGE_SIZE) {
+                long position = getDataPageOffset(pageNums.get(start));
+                long count = (long) (i - start) * StorageManager.PAGE_SIZE;
+                long sent = 0;
+                try {
+                    while (sent < count) {
+                        long n = this.fileChannelWriter.transferTo(position + sent, count - sent, target);
+                        if (n <= 0) {
+                            throw new PageException("target accepted " + (total + sent) + " bytes of "
+                                    + (long) size * StorageManager.PAGE_SIZE);
+                        }
+                        sent += n;
+                    }
+                } finally {
+                    for (int k = 0; k < sent / StorageManager.PAGE_SIZE; k++) {
+                        commitOffsetForPage(pageNums.get(start + k));
+                    }
+                }
+                total += sent;
+                start = i;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * {@link #transferPages(List, WritableByteChannel)} of a compressed partition : frames have to be
+     * decompressed, so each page is copied through one pooled buffer instead of a zero copy transfer
      */
-    private void writeHeaderPage(int headerIndex) throws IOException {
-        // TODO check master pages count
-        byte[] headerBytes = writerHeaderPages.get(0);
-        ByteBuffer b = ByteBuffer.wrap(headerBytes);
-        this.fileChannelWriter.write(b, PartitionInfo.headerPageOffset(headerIndex));
+    private long transferCompressedPages(List<Integer> pageNums, WritableByteChannel target) throws IOException {
+        long total = 0;
+        ByteBuffer buffer = PageBufferPool.shared().acquire();
+        try {
+            for (int pageNum : pageNums) {
+                buffer.clear();
+                readPage(pageNum, buffer);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    if (target.write(buffer) <= 0) {
+                        throw new PageException("target accepted " + (total + buffer.position()) + " bytes of "
+                                + (long) pageNums.size() * StorageManager.PAGE_SIZE);
+                    }
+                }
+                total += StorageManager.PAGE_SIZE;
+                commitOffsetForPage(pageNum);
+            }
+        } finally {
+            PageBufferPool.shared().release(buffer);
+        }
+        return total;
     }
 
     /**
-     * Writes a header page to disk.
+     * Reads a batch of readable data pages of this partition
+     * <p>
+     * Pages are sorted by file offset and adjacent pages are merged in one scattering read,
+     * next readable pages after the batch are read ahead
      *
-     * @param headerIndex which header page
+     * @param pageNums data page numbers to read
+     * @param bufs     page sized buffers in same order as pageNums
+     * @throws PageBatchException with pages failing checksum (index in pageNums), other pages are read
      */
-    private void writeReaderPage(int headerIndex) throws IOException {
-        byte[] headerBytes = readerHeaderPages.get(headerIndex);
-        ByteBuffer b = ByteBuffer.wrap(headerBytes);
-        this.fileChannelReader.write(b, PartitionInfo.readerHeaderPageOffset(headerIndex));
+    public void readPages(List<Integer> pageNums, List<byte[]> bufs) throws IOException {
+        if (pageNums.size() != bufs.size()) {
+            throw new PageException("pages request to read " + pageNums.size() + ":: not equal to buffersize :  " + bufs.size());
+        }
+        int size = pageNums.size();
+        if (size == 0) {
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if (isNotAllocatedPage(pageNums.get(i), false)) {
+                throw new PageException("page " + pageNums.get(i) + " is not allocated");
+            }
+        }
+        // pages still in write cache are copied, rest are read from disk
+        Integer[] order = new Integer[size];
+        int misses = 0;
+        for (int i = 0; i < size; i++) {
+            if (this.pageCache == null || !this.pageCache.copyTo(pageNums.get(i), ByteBuffer.wrap(bufs.get(i)))) {
+                order[misses++] = i;
+            }
+        }
+        if (misses == 0) {
+            return;
+        }
+        order = Arrays.copyOf(order, misses);
+        Arrays.sort(order, Comparator.comparingInt(pageNums::get));
+        Map<Integer, RuntimeException> corrupt = new HashMap<>();
+        if (this.checksums != null) {
+            for (int index : order) {
+                if (this.checksums.isCorrupt(pageNums.get(index))) {
+                    corrupt.put(index, corruptPage(pageNums.get(index)));
+                }
+            }
+        }
+
+        if (this.compressedPages != null) {
+            // frames are not page aligned, consecutive pages come from the frame cache
+            for (int index : order) {
+                try {
+                    this.compressedPages.read(pageNums.get(index), ByteBuffer.wrap(bufs.get(index)));
+                    verifyChecksum(pageNums.get(index), ByteBuffer.wrap(bufs.get(index)));
+                } catch (PageException e) {
+                    corrupt.put(index, e);
+                }
+            }
+            misses = 0;
+        }
+
+        int start = 0;
+        for (int i = 1; i <= misses; i++) {
+            if (i == misses || getDataPageOffset(pageNums.get(order[i]))
+                    != getDataPageOffset(pageNums.get(order[i - 1])) + StorageManager.PAGE_SIZE) {
+                ByteBuffer[] run = new ByteBuffer[i - start];
+                for (int k = 0; k < run.length; k++) {
+                    run[k] = ByteBuffer.wrap(bufs.get(order[start + k]));
+                }
+                this.writerEngine.read(run, getDataPageOffset(pageNums.get(order[start])));
+                for (int k = 0; k < run.length; k++) {
+                    int index = order[start + k];
+                    try {
+                        verifyChecksum(pageNums.get(index), ByteBuffer.wrap(bufs.get(index)));
+                    } catch (PageException e) {
+                        corrupt.put(index, e);
+                    }
+                }
+                start = i;
+            }
+        }
+
+        if (this.readAhead != null && misses > 0) {
+            int next = pageNums.get(order[misses - 1]) + 1;
+            int run = readableRun(next, this.readAhead.capacity());
+            if (run > 0) {
+                this.readAhead.fill(next, run, this.writerEngine, PartitionInfo.getDataPageOffset(next));
+            }
+        }
+        if (!corrupt.isEmpty()) {
+            throw new PageBatchException("readPages", corrupt);
+        }
+    }
+
+    /**
+     * @param pageNum first page
+     * @param max     max pages
+     * @return number of readable pages from pageNum stored contiguously (same header page)
+     */
+    private int readableRun(int pageNum, int max) {
+        int headerIndex = pageNum / StorageManager.DATA_PAGES_PER_HEADER;
+        if (headerIndex >= StorageManager.MAX_READER_HEADER_PAGES) {
+            return 0;
+        }
+        PageBitmap headerPage = this.readerHeaderPages.get(headerIndex);
+        if (headerPage == null) {
+            return 0;
+        }
+        int pageIndex = pageNum % StorageManager.DATA_PAGES_PER_HEADER;
+        int run = 0;
+        while (run < max && pageIndex + run < StorageManager.DATA_PAGES_PER_HEADER && headerPage.get(pageIndex + run)) {
+            run++;
+        }
+        return run;
+    }
+
+    // update header page : commit offset (reading is done) for page i.e. update reader page bit to 0
+    // and update the master page
+    public void commitOffsetForPage(int pageNum) throws IOException {
+        int headerIndex = pageNum / StorageManagerImpl.DATA_PAGES_PER_HEADER;
+        int pageIndex = pageNum % StorageManagerImpl.DATA_PAGES_PER_HEADER;
+
+        boolean flush;
+        synchronized (metadataLock) {
+            PageBitmap headerPage = readerHeaderPages.get(headerIndex);
+            if (headerPage == null) {
+                throw new NoSuchElementException("header page : " + headerIndex + " is empty");
+            }
+
+            // mark readable bit as zero
+            if (!headerPage.clear(pageIndex * DATA_PAGE_BITS_HEADER)) {
+                // TODO warn
+                throw new PageException("already commit offset for this page : " + pageNum);
+            }
+
+            this.readerMasterPage--;
+            journal(MetadataJournal.RecordType.OFFSET_COMMITTED, pageNum);
+            flush = markDirty(headerIndex, false);
+        }
+        if (this.readAhead != null) {
+            this.readAhead.invalidate(pageNum);
+        }
+        if (this.pageCache != null) {
+            this.pageCache.invalidate(pageNum);
+        }
+        if (flush) {
+            flushMetadataAfterData();
+        }
     }
 
     /**
@@ -407,6 +1261,9 @@ public class PartitionInfo implements AutoCloseable {
      * @return
      */
     public int allocPage() throws IOException {
+        if (this.config.isMultiProducerPartitions()) {
+            return reservePage();
+        }
         int headerIndex = -1;
         for (int i = 0; i < StorageManager.MAX_HEADER_PAGES; ++i) {
             // check if page is available
@@ -421,23 +1278,131 @@ public class PartitionInfo implements AutoCloseable {
 //            throw new PageException("no free pages - partition has reached max size");
         }
 
-        // get the header bytes
-        byte[] headerBytes = this.writerHeaderPages.get(headerIndex);
+        int pageNum;
+        boolean flush;
+        synchronized (metadataLock) {
+            // get the header page
+            PageBitmap headerPage = this.writerHeaderPages.get(headerIndex);
+
+            // if initial page available else pageIndex which is available 11110 -> 4th index available
+            int pageIndex = headerPage == null ? 0 : headerPage.nextClearBit();
+            if (pageIndex < 0) {
+                throw new PageException("header page should have free space, but doesn't");
+            }
+            pageNum = this.allocPage(headerIndex, pageIndex);
+            this.unpublishedPages.set(pageNum);
+            journal(MetadataJournal.RecordType.PAGE_ALLOCATED, pageNum);
+            flush = markDirty(headerIndex, true);
+        }
+        if (flush) {
+            flushMetadataAfterData();
+        }
+        return pageNum;
+    }
+
+    /**
+     * Reserve next page for one of concurrent producers, page number comes from the cursor
+     * and only its header bit is set under metadata lock
+     *
+     * @return reserved page or Integer.MIN_VALUE if partition is full
+     */
+    private int reservePage() throws IOException {
+        int capacity = StorageManager.MAX_HEADER_PAGES * StorageManager.DATA_PAGES_PER_HEADER;
+        if (this.reserveCursor.get() < 0) {
+            positionReserveCursor();
+        }
+        while (true) {
+            int pageNum = this.reserveCursor.getAndUpdate(x -> x < capacity ? x + 1 : x);
+            if (pageNum >= capacity) {
+                return Integer.MIN_VALUE;
+            }
+            int headerIndex = pageNum / StorageManager.DATA_PAGES_PER_HEADER;
+            int pageIndex = pageNum % StorageManager.DATA_PAGES_PER_HEADER;
+            boolean flush;
+            synchronized (metadataLock) {
+                PageBitmap headerPage = this.writerHeaderPages.get(headerIndex);
+                if (headerPage != null && headerPage.get(pageIndex)) {
+                    // allocated before cursor was positioned, take next one
+                    continue;
+                }
+                this.allocPage(headerIndex, pageIndex);
+                this.unpublishedPages.set(pageNum);
+                journal(MetadataJournal.RecordType.PAGE_ALLOCATED, pageNum);
+                flush = markDirty(headerIndex, true);
+            }
+            if (flush) {
+                flushMetadataAfterData();
+            }
+            return pageNum;
+        }
+    }
+
+    /**
+     * Position cursor and completion watermark after allocated pages, once journal replay is done
+     */
+    private void positionReserveCursor() {
+        synchronized (metadataLock) {
+            if (this.reserveCursor.get() >= 0) {
+                return;
+            }
+            int first = StorageManager.MAX_HEADER_PAGES * StorageManager.DATA_PAGES_PER_HEADER;
+            for (int headerIndex = 0; headerIndex < StorageManager.MAX_HEADER_PAGES; headerIndex++) {
+                PageBitmap headerPage = this.writerHeaderPages.get(headerIndex);
+                int pageIndex = headerPage == null ? 0 : headerPage.nextClearBit();
+                if (pageIndex >= 0) {
+                    first = headerIndex * StorageManager.DATA_PAGES_PER_HEADER + pageIndex;
+                    break;
+                }
+            }
+            this.completionTracker = new PageCompletionTracker(first, this::updateReaderPageBits);
+            this.reserveCursor.set(first);
+        }
+    }
+
+    /**
+     * Make a written page readable, see {@link #pagesWritten(List)}
+     */
+    public void pageWritten(int pageNum) throws IOException {
+        pagesWritten(Collections.singletonList(pageNum));
+    }
 
-        OptionalInt pageIndex;
-        // if initial page available
-        if (headerBytes == null) {
-            pageIndex = OptionalInt.of(0);
+    /**
+     * Make written pages readable : at once with a single producer, in gap-free page order
+     * once every earlier reserved page is written too in multi producer mode.
+     * Readable marks are journaled after the data commit of the pages, they are committed here
+     * as per durability policy so a page acknowledged as durable is also readable after a crash
+     */
+    public void pagesWritten(List<Integer> pageNums) throws IOException {
+        PageCompletionTracker tracker = this.completionTracker;
+        if (tracker != null) {
+            tracker.complete(pageNums);
         } else {
-            // pageIndex which is available 11110 -> 4th index available
-            pageIndex = IntStream.range(0, StorageManager.DATA_PAGES_PER_HEADER)
-                    .filter(position -> Bits.getBit(headerBytes, position) == Bits.Bit.ZERO)
-                    .findFirst();
+            updateReaderPageBits(pageNums);
         }
-        if (pageIndex.isEmpty()) {
-            throw new PageException("header page should have free space, but doesn't");
+        if (this.journal != null) {
+            this.journal.commit(pageNums.size());
+        }
+    }
+
+    /**
+     * Give up allocated pages whose write failed : they stay allocated and are never made readable,
+     * in multi producer mode later pages are no longer held back by them. A page written again later
+     * is made readable as usual.
+     */
+    public void abandonPages(List<Integer> pageNums) throws IOException {
+        List<Integer> allocated = new ArrayList<>(pageNums.size());
+        for (int pageNum : pageNums) {
+            if (!isNotAllocatedPage(pageNum, true)) {
+                allocated.add(pageNum);
+            }
+        }
+        synchronized (metadataLock) {
+            allocated.forEach(this.unpublishedPages::clear);
+        }
+        PageCompletionTracker tracker = this.completionTracker;
+        if (tracker != null && !allocated.isEmpty()) {
+            tracker.abandon(allocated);
         }
-        return this.allocPage(headerIndex, pageIndex.getAsInt());
     }
 
     /**
@@ -446,49 +1411,37 @@ public class PartitionInfo implements AutoCloseable {
      * @return
      */
     public int allocReaderPage() throws IOException {
-        byte[] headerBytes;
-        OptionalInt pageIndex = OptionalInt.empty();
+        PageBitmap headerPage;
+        int pageIndex = -1;
         for (int headerIndex = 0; headerIndex < StorageManager.MAX_READER_HEADER_PAGES; headerIndex++) {
-            // get the header bytes
-            headerBytes = this.readerHeaderPages.get(headerIndex);
+            // get the header page
+            headerPage = this.readerHeaderPages.get(headerIndex);
 
-            // if initial page available
-            if (headerBytes == null) {
-                pageIndex = OptionalInt.of(0);
-            } else {
-                // pageIndex which is available 11110 -> 4th index available
-                for (int i = 0; i < StorageManager.DATA_PAGES_PER_HEADER; i++) {
-                    if (Bits.getBit(headerBytes, i) == Bits.Bit.ZERO) {
-                        pageIndex = OptionalInt.of(i);
-                        break;
-                    }
-                }
-            }
-            if (pageIndex.isEmpty()) {
+            // if initial page available else pageIndex which is available 11110 -> 4th index available
+            pageIndex = headerPage == null ? 0 : headerPage.nextClearBit();
+            if (pageIndex < 0) {
                 throw new PageException("header page should have free space, but doesn't");
             }
 
-
-            if (headerBytes == null) {
-                headerBytes = new byte[StorageManager.PAGE_SIZE];
-                this.readerHeaderPages.remove(headerIndex);
-                this.readerHeaderPages.add(headerIndex, headerBytes);
+            if (headerPage == null) {
+                headerPage = new PageBitmap(StorageManager.DATA_PAGES_PER_HEADER);
+                this.readerHeaderPages.set(headerIndex, headerPage);
             }
 
             // check if already allocated
-            if (Bits.getBit(headerBytes, pageIndex.getAsInt()) == Bits.Bit.ONE) {
+            if (headerPage.get(pageIndex)) {
                 throw new IllegalStateException("page at (part=" + partitionNumber + ", header=" + headerIndex + ", index="
                         +
                         pageIndex + ") already allocated");
             }
 
-            this.readerMasterPage = (short) Bits.countBits(headerBytes);
-            // update count of existing
-            this.writeOrReadMasterPageForPartition((short) pageIndex.getAsInt(), false);
-            // write down updated header page
-            this.writeReaderPage(headerIndex);
+            // write down count of existing and header page
+            synchronized (metadataLock) {
+                markDirty(headerIndex, false);
+            }
         }
-        return pageIndex.getAsInt();
+        flushMetadata();
+        return pageIndex;
     }
 
     /**
@@ -498,32 +1451,24 @@ public class PartitionInfo implements AutoCloseable {
      * @param pageIndex
      * @return
      */
-    private int allocPage(int headerIndex, int pageIndex) throws IOException {
-        byte[] headerBytes = this.writerHeaderPages.get(headerIndex);
-        if (headerBytes == null) {
-            headerBytes = new byte[StorageManager.PAGE_SIZE];
-            this.writerHeaderPages.remove(headerIndex);
-            this.writerHeaderPages.add(headerIndex, headerBytes);
+    private int allocPage(int headerIndex, int pageIndex) {
+        PageBitmap headerPage = this.writerHeaderPages.get(headerIndex);
+        if (headerPage == null) {
+            headerPage = new PageBitmap(StorageManager.DATA_PAGES_PER_HEADER);
+            this.writerHeaderPages.set(headerIndex, headerPage);
         }
 
         // check if already allocated
-        if (Bits.getBit(headerBytes, pageIndex) == Bits.Bit.ONE) {
+        if (!headerPage.set(pageIndex)) {
             throw new IllegalStateException("page at (part=" + partitionNumber + ", header=" + headerIndex + ", index="
                     +
                     pageIndex + ") already allocated");
         }
 
-        Bits.setBit(headerBytes, pageIndex, Bits.Bit.ONE);
-        this.masterPage = (short) Bits.countBits(headerBytes);
-
-        int pageNum = pageIndex + headerIndex * StorageManager.DATA_PAGES_PER_HEADER;
-
-        // write down updated master page
-        this.writeOrReadMasterPageForPartition(this.masterPage, true);
-        // write down updated header page
-        this.writeHeaderPage(headerIndex);
+        this.masterPage++;
 
-        return pageNum;
+        // master and header page are written back on next flush
+        return pageIndex + headerIndex * StorageManager.DATA_PAGES_PER_HEADER;
     }
 
     /**
@@ -533,27 +1478,98 @@ public class PartitionInfo implements AutoCloseable {
      * @throws IOException
      */
     public void updateReaderPageBit(int pageNum) throws IOException {
-        // update read bit
-        int headerIndex = pageNum / StorageManagerImpl.DATA_PAGES_PER_HEADER;
-        int pageIndex = pageNum % StorageManagerImpl.DATA_PAGES_PER_HEADER;
+        updateReaderPageBits(Collections.singletonList(pageNum));
+    }
 
-        byte[] headerBytes = readerHeaderPages.get(0);
-        if (headerBytes == null) {
-            throw new NoSuchElementException("Reader page is empty and unallocated");
+    /**
+     * Update the reader master page count and header page bits for a batch of pages,
+     * header and master pages are marked dirty once for the whole batch
+     *
+     * @param pageNums
+     * @throws IOException
+     */
+    public void updateReaderPageBits(List<Integer> pageNums) throws IOException {
+        boolean flush = false;
+        BitSet touched = new BitSet();
+        synchronized (metadataLock) {
+            for (int pageNum : pageNums) {
+                // update read bit
+                int headerIndex = pageNum / StorageManagerImpl.DATA_PAGES_PER_HEADER;
+                int pageIndex = pageNum % StorageManagerImpl.DATA_PAGES_PER_HEADER;
+
+                PageBitmap headerPage = readerHeaderPages.get(headerIndex);
+                if (headerPage == null) {
+                    throw new NoSuchElementException("Reader page is empty and unallocated");
+                }
+                this.unpublishedPages.clear(pageNum);
+
+                // mark readable bit as ONE, skip if already in read mode
+                if (headerPage.set(pageIndex)) {
+                    // update master page
+                    this.readerMasterPage++;
+                    journal(MetadataJournal.RecordType.PAGE_READABLE, pageNum);
+                    touched.set(headerIndex);
+                }
+            }
+            for (int i = touched.nextSetBit(0); i >= 0; i = touched.nextSetBit(i + 1)) {
+                flush |= markDirty(i, false);
+            }
         }
+        if (!touched.isEmpty()) {
+            // wake readers of this partition
+            this.readerWait.signalAll();
+        }
+        if (flush) {
+            flushMetadataAfterData();
+        }
+        // update the metadata if needed also
+    }
 
-        // return if already in read mode
-        Bits.Bit bit = Bits.getBit(readerHeaderPages.get(0), pageIndex);
-        if (bit == Bits.Bit.ONE) {
-            return;
+    /**
+     * Wait as per reader wait strategy till a page is readable
+     *
+     * @param timeout max time to wait
+     * @param unit    unit of timeout
+     * @return first readable page or -1 if none became readable
+     */
+    public int awaitReadablePage(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!this.readerWait.await(() -> this.readerMasterPage > 0, unit.toNanos(timeout))) {
+            return -1;
         }
-        // mark readable byte as ONE
-        Bits.setBit(headerBytes, pageIndex, Bits.Bit.ONE);
-        // update master page
-        this.readerMasterPage = (short) Bits.countBits(headerBytes);
+        return firstReadablePage();
+    }
 
-        this.writeOrReadMasterPageForPartition(this.readerMasterPage, false);
-        this.writeReaderPage(headerIndex);
-        // update the metadata if needed also
+    /**
+     * @return readable pages not committed yet
+     */
+    public int readablePages() {
+        return this.readerMasterPage;
+    }
+
+    /**
+     * @return true if no page is readable and every page allocated since open was made readable or abandoned,
+     * both checked at once so a page published meanwhile is not missed
+     */
+    public boolean isFullyRead() {
+        synchronized (metadataLock) {
+            return this.readerMasterPage == 0 && this.unpublishedPages.isEmpty();
+        }
+    }
+
+    /**
+     * @return first readable page without waiting or -1 if none
+     */
+    public int firstReadablePage() {
+        synchronized (metadataLock) {
+            for (int headerIndex = 0; headerIndex < StorageManager.MAX_READER_HEADER_PAGES; headerIndex++) {
+                PageBitmap headerPage = this.readerHeaderPages.get(headerIndex);
+                int pageIndex = headerPage == null ? -1 : headerPage.nextSetBit(0);
+                if (pageIndex >= 0) {
+                    return headerIndex * StorageManager.DATA_PAGES_PER_HEADER + pageIndex;
+                }
+            }
+        }
+        // nothing readable or another reader committed it first
+        return -1;
     }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package org.amity.storage;
+
+import org.amity.concurrency.executors.PartitionReaderThreadExecutor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages of partitions handed to a consumer by work stealing reader loops
+ * (see {@link PartitionReaderThreadExecutor#startReaders})
+ * <p>
+ * 1. readable partitions are active partitions plus partitions marked readable in metadata
+ * 2. pages of a partition are read from first readable page on, each page is committed
+ * once consumer returns, a page consumer failed on is read again on next claim
+ * 3. a full partition no writer is active on is committed in metadata once its last page is read
+ */
+public class PartitionPageReader implements PartitionReaderThreadExecutor.PartitionReader {
+
+    /**
+     * Receives pages read by reader loops, pages of a partition come in page order
+     */
+    public interface PageConsumer {
+        /**
+         * @param page virtual page number
+         * @param buf  page contents, only valid during the call
+         */
+        void accept(long page, ByteBuffer buf) throws IOException;
+    }
+
+    private final StorageManagerImpl storageManager;
+    private final MetadataInfo metadataInfo;
+    private final PageConsumer consumer;
+
+    PartitionPageReader(StorageManagerImpl storageManager, MetadataInfo metadataInfo, PageConsumer consumer) {
+        this.storageManager = storageManager;
+        this.metadataInfo = metadataInfo;
+        this.consumer = consumer;
+    }
+
+    @Override
+    public List<Integer> readablePartitions() {
+        List<Integer> partitions = new ArrayList<>();
+        for (short partNum : this.metadataInfo.getActivePartitions()) {
+            partitions.add((int) partNum);
+        }
+        for (int partNum : this.metadataInfo.getReadablePartitions()) {
+            if (!partitions.contains(partNum)) {
+                partitions.add(partNum);
+            }
+        }
+        return partitions;
+    }
+
+    @Override
+    public int backlog(int partitionNumber) {
+        PartitionInfo pi = this.storageManager.partitionInfo.get(partitionNumber);
+        // not open yet, a marked readable partition has pages to read
+        return pi != null ? pi.readablePages() : 1;
+    }
+
+    @Override
+    public int readPages(int partitionNumber, int maxPages) throws IOException {
+        PartitionInfo pi = this.storageManager.getPartInfo(partitionNumber);
+        ByteBuffer buf = PageBufferPool.shared().acquire();
+        int read = 0;
+        try {
+            int pageNum;
+            while (read < maxPages && (pageNum = pi.firstReadablePage()) >= 0) {
+                buf.clear();
+                pi.readPage(pageNum, buf);
+                buf.flip();
+                this.consumer.accept(StorageManager.getVirtualPageNum(partitionNumber, pageNum), buf);
+                pi.commitOffsetForPage(pageNum);
+                read++;
+            }
+        } finally {
+            PageBufferPool.shared().release(buf);
+        }
+        if (read < maxPages && isFullyRead(pi)) {
+            this.metadataInfo.commitPartitionOffset((short) partitionNumber);
+        }
+        return read;
+    }
+
+    private boolean isFullyRead(PartitionInfo pi) {
+        int partNum = pi.getPartitionNumber();
+        // writers switch away only from a full partition, no page is allocated in it any more
+        // but pages allocated before the switch may still be in flight, in any producer mode
+        return this.metadataInfo.isReadablePartition(partNum) && !this.metadataInfo.isActivePartition(partNum)
+                && pi.isFullyRead();
+    }
+}
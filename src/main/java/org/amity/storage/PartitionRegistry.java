@@ -0,0 +1,137 @@
+package org.amity.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Open partitions indexed by partition number
+ * <p>
+ * Lookup on read/write path is a volatile array read, no hashing and no lock.
+ * 1. a partition is registered with a CAS on its slot, registering a number twice fails
+ * 2. a partition not open yet is opened by the first thread touching it, other threads touching
+ * the same partition wait for that open instead of opening its files a second time
+ */
+public class PartitionRegistry {
+    private final AtomicReferenceArray<PartitionInfo> partitions =
+            new AtomicReferenceArray<>(StorageManager.MAX_PARTITION_ALLOWED);
+    private final AtomicReferenceArray<CompletableFuture<PartitionInfo>> opening =
+            new AtomicReferenceArray<>(StorageManager.MAX_PARTITION_ALLOWED);
+
+    /**
+     * @return open partition or null
+     */
+    public PartitionInfo get(int partNum) {
+        return inRange(partNum) ? this.partitions.get(partNum) : null;
+    }
+
+    public boolean contains(int partNum) {
+        return get(partNum) != null;
+    }
+
+    /**
+     * @return false if a partition with same number is already registered
+     */
+    public boolean register(PartitionInfo pi) {
+        int partNum = pi.getPartitionNumber();
+        if (!inRange(partNum)) {
+            throw new PageException(" Incorrect partition number " + partNum + " of " + StorageManager.MAX_PARTITION_ALLOWED);
+        }
+        return this.partitions.compareAndSet(partNum, null, pi);
+    }
+
+    /**
+     * Drop partition if it is still the registered one
+     */
+    public boolean remove(PartitionInfo pi) {
+        return this.partitions.compareAndSet(pi.getPartitionNumber(), pi, null);
+    }
+
+    /**
+     * @param partNum partition number, in range
+     * @param opener  opens partition files, called at most once per partition at a time
+     * @return registered partition, opened by this or a concurrent call if needed
+     */
+    PartitionInfo getOrOpen(int partNum, SparePartitionPool.PartitionFactory opener) throws IOException {
+        PartitionInfo pi = this.partitions.get(partNum);
+        if (pi != null) {
+            return pi;
+        }
+        CompletableFuture<PartitionInfo> open = new CompletableFuture<>();
+        CompletableFuture<PartitionInfo> running = this.opening.compareAndExchange(partNum, null, open);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new PageException("could not open partition " + partNum + ": " + e.getCause());
+            }
+        }
+        try {
+            // registered while this call was claiming the open
+            pi = this.partitions.get(partNum);
+            if (pi == null) {
+                pi = opener.create(partNum);
+                if (!register(pi)) {
+                    PartitionInfo opened = pi;
+                    pi = this.partitions.get(partNum);
+                    closeQuietly(opened);
+                }
+            }
+            open.complete(pi);
+            return pi;
+        } catch (IOException | RuntimeException e) {
+            open.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.opening.set(partNum, null);
+        }
+    }
+
+    /**
+     * @return open partitions in partition number order
+     */
+    public List<PartitionInfo> values() {
+        List<PartitionInfo> values = new ArrayList<>();
+        for (int i = 0; i < this.partitions.length(); i++) {
+            PartitionInfo pi = this.partitions.get(i);
+            if (pi != null) {
+                values.add(pi);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return numbers of open partitions in order
+     */
+    public List<Integer> partitionNumbers() {
+        List<Integer> numbers = new ArrayList<>();
+        for (PartitionInfo pi : values()) {
+            numbers.add(pi.getPartitionNumber());
+        }
+        return numbers;
+    }
+
+    private static boolean inRange(int partNum) {
+        return partNum >= 0 && partNum < StorageManager.MAX_PARTITION_ALLOWED;
+    }
+
+    private static void closeQuietly(PartitionInfo pi) {
+        try {
+            pi.close();
+        } catch (Exception e) {
+            System.err.println("could not close partition " + pi.getPartitionNumber() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionRegistry" + partitionNumbers();
+    }
+}
@@ -0,0 +1,73 @@
+package org.amity.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Small per partition window of pages read ahead of the reader
+ * <p>
+ * Readers drain a partition nearly sequentially, so on a miss the next readable pages
+ * are fetched with the requested one in a single read and served from memory afterwards.
+ * Only readable pages are fetched, window is dropped when one of its pages is committed or rewritten.
+ */
+public class ReadAheadBuffer {
+    private final ByteBuffer window;
+    private final int capacity;
+    private int firstPage = -1;
+    private int count;
+
+    public ReadAheadBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("read ahead pages should be positive : " + capacity);
+        }
+        this.capacity = capacity;
+        this.window = ByteBuffer.allocateDirect(capacity * StorageManager.PAGE_SIZE);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Copy page to dst if present in window
+     *
+     * @return true on hit
+     */
+    public synchronized boolean copyTo(int pageNum, ByteBuffer dst) {
+        if (firstPage < 0 || pageNum < firstPage || pageNum >= firstPage + count) {
+            return false;
+        }
+        ByteBuffer page = window.duplicate();
+        int offset = (pageNum - firstPage) * StorageManager.PAGE_SIZE;
+        page.position(offset);
+        page.limit(offset + StorageManager.PAGE_SIZE);
+        dst.put(page);
+        return true;
+    }
+
+    /**
+     * Replace window with pages [firstPage, firstPage + count) stored contiguously at position
+     */
+    public synchronized void fill(int firstPage, int count, PageIOEngine engine, long position) throws IOException {
+        if (count > capacity) {
+            throw new IllegalArgumentException("read ahead of " + count + " pages exceeds window of " + capacity);
+        }
+        this.firstPage = -1;
+        ByteBuffer b = window.duplicate();
+        b.clear();
+        b.limit(count * StorageManager.PAGE_SIZE);
+        engine.read(b, position);
+        this.firstPage = firstPage;
+        this.count = count;
+    }
+
+    /**
+     * Drop window if it holds the page (i.e. offset committed or page rewritten)
+     */
+    public synchronized void invalidate(int pageNum) {
+        if (firstPage >= 0 && pageNum >= firstPage && pageNum < firstPage + count) {
+            firstPage = -1;
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.amity.storage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded off-heap cache of recently written data pages of a partition
+ * <p>
+ * Readers usually consume a page shortly after it is written, so writes populate the cache
+ * and reads are served from it without any disk I/O.
+ * 1. pages live in one direct slab of capacity slots
+ * 2. a full cache evicts with CLOCK : hand skips (and un-references) slots read since it last passed
+ * 3. a page is dropped once its offset is committed, it will not be read again
+ */
+public class RecentPageCache {
+    private final ByteBuffer slab;
+    private final int capacity;
+    private final Map<Integer, Integer> slots;
+    // page held by each slot, -1 if free
+    private final int[] slotPages;
+    private final BitSet referenced;
+    private int hand;
+    private int used;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public RecentPageCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("cache pages should be positive : " + capacity);
+        }
+        this.capacity = capacity;
+        this.slab = ByteBuffer.allocateDirect(capacity * StorageManager.PAGE_SIZE);
+        this.slots = new HashMap<>(capacity * 2);
+        this.slotPages = new int[capacity];
+        Arrays.fill(this.slotPages, -1);
+        this.referenced = new BitSet(capacity);
+    }
+
+    /**
+     * Cache (or replace) page content
+     *
+     * @param pageNum data page number
+     * @param page    PAGE_SIZE bytes from position, position is not changed
+     */
+    public synchronized void put(int pageNum, ByteBuffer page) {
+        Integer slot = slots.get(pageNum);
+        if (slot == null) {
+            slot = freeSlot();
+            slots.put(pageNum, slot);
+            slotPages[slot] = pageNum;
+            used++;
+        }
+        // new page is not referenced yet, it has one turn of the hand to be read
+        referenced.clear(slot);
+        ByteBuffer src = page.duplicate();
+        src.limit(src.position() + StorageManager.PAGE_SIZE);
+        slot(slot).put(src);
+    }
+
+    /**
+     * Copy page to dst if cached
+     *
+     * @return true on hit
+     */
+    public synchronized boolean copyTo(int pageNum, ByteBuffer dst) {
+        Integer slot = slots.get(pageNum);
+        if (slot == null) {
+            misses.increment();
+            return false;
+        }
+        referenced.set(slot);
+        dst.put(slot(slot));
+        hits.increment();
+        return true;
+    }
+
+    /**
+     * Drop page i.e. its offset is committed
+     */
+    public synchronized void invalidate(int pageNum) {
+        Integer slot = slots.remove(pageNum);
+        if (slot != null) {
+            slotPages[slot] = -1;
+            referenced.clear(slot);
+            used--;
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized int size() {
+        return used;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private int freeSlot() {
+        while (true) {
+            int slot = hand;
+            hand = (hand + 1) % capacity;
+            if (slotPages[slot] < 0) {
+                return slot;
+            }
+            if (used < capacity) {
+                continue;
+            }
+            if (!referenced.get(slot)) {
+                slots.remove(slotPages[slot]);
+                slotPages[slot] = -1;
+                used--;
+                evictions.increment();
+                return slot;
+            }
+            // second chance
+            referenced.clear(slot);
+        }
+    }
+
+    private ByteBuffer slot(int slot) {
+        ByteBuffer page = slab.duplicate();
+        page.position(slot * StorageManager.PAGE_SIZE);
+        page.limit((slot + 1) * StorageManager.PAGE_SIZE);
+        return page;
+    }
+
+    @Override
+    public String toString() {
+        return "RecentPageCache{hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions()
+                + ", size=" + size() + "/" + capacity + "}";
+    }
+}
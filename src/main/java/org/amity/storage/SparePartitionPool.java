@@ -0,0 +1,146 @@
+package org.amity.storage;
+
+import org.amity.concurrency.factory.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Partitions created and header initialized ahead of time by a background thread
+ * <p>
+ * Switching a writer to a new partition only takes a ready partition from the pool,
+ * files are opened and master/header pages written off the writer's critical path.
+ * 1. pool is topped up to configured spare partitions after every take
+ * 2. partition numbers are reserved by metadata ({@link MetadataInfo#reserveSparePartition()}), numbers of
+ * unused spares are reserved again on restart and their files reopened as is
+ * 3. if pool is empty (i.e. refill is behind) take creates the partition on calling thread
+ * 4. a spare given back after a lost switch is taken first, so numbers are used in reserve order
+ */
+public class SparePartitionPool implements AutoCloseable {
+    private static final String SPARE_PARTITION_THREAD = "sp-thread";
+
+    /**
+     * Creates a partition with files, master and header pages initialized
+     */
+    interface PartitionFactory {
+        PartitionInfo create(int partNum) throws IOException;
+    }
+
+    private final int capacity;
+    private final MetadataInfo metadataInfo;
+    private final PartitionFactory factory;
+    private final ConcurrentLinkedDeque<PartitionInfo> ready = new ConcurrentLinkedDeque<>();
+    /**
+     * single refill thread, one top up may wait behind running one and others are dropped
+     */
+    private final ThreadPoolExecutor refiller;
+
+    public SparePartitionPool(int capacity, MetadataInfo metadataInfo, PartitionFactory factory) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("spare partitions should not be negative : " + capacity);
+        }
+        this.capacity = capacity;
+        this.metadataInfo = metadataInfo;
+        this.factory = factory;
+        this.refiller = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1), new ThreadFactoryBuilder()
+                .setNamePrefix(SPARE_PARTITION_THREAD)
+                .setDaemon(true)
+                .setPriority(Thread.MIN_PRIORITY)
+                .build(), new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Start filling the pool in background
+     */
+    public void start() {
+        refill();
+    }
+
+    /**
+     * @return ready partition or one created on calling thread if pool is empty
+     * @throws PageException if all partitions are allocated
+     */
+    public PartitionInfo take() throws IOException {
+        PartitionInfo pi = ready.poll();
+        if (pi == null) {
+            int partNum = reserve();
+            if (partNum < 0) {
+                throw new PageException("all " + StorageManager.MAX_PARTITION_ALLOWED + " partitions are allocated");
+            }
+            pi = factory.create(partNum);
+        }
+        refill();
+        return pi;
+    }
+
+    /**
+     * @param partNum partition number
+     * @return ready partition with given number or null if it is not in pool
+     */
+    public PartitionInfo take(int partNum) {
+        Iterator<PartitionInfo> it = ready.iterator();
+        while (it.hasNext()) {
+            PartitionInfo pi = it.next();
+            if (pi.getPartitionNumber() == partNum && ready.remove(pi)) {
+                refill();
+                return pi;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return a taken partition which was not used e.g. writer lost a concurrent switch
+     */
+    public void giveBack(PartitionInfo pi) {
+        ready.addFirst(pi);
+    }
+
+    public int size() {
+        return ready.size();
+    }
+
+    private void refill() {
+        if (capacity > 0 && ready.size() < capacity && !refiller.isShutdown()) {
+            refiller.execute(this::topUp);
+        }
+    }
+
+    private void topUp() {
+        while (ready.size() < capacity && !refiller.isShutdown()) {
+            int partNum = reserve();
+            if (partNum < 0) {
+                return;
+            }
+            try {
+                ready.add(factory.create(partNum));
+            } catch (IOException | RuntimeException e) {
+                // writer falls back to creating partition on its own thread
+                System.err.println("could not pre-allocate partition " + partNum + ": " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return next unused partition number or -1 if none is left
+     */
+    private int reserve() {
+        return metadataInfo.reserveSparePartition();
+    }
+
+    @Override
+    public void close() throws Exception {
+        refiller.shutdown();
+        refiller.awaitTermination(10, TimeUnit.SECONDS);
+        PartitionInfo pi;
+        while ((pi = ready.poll()) != null) {
+            pi.close();
+        }
+    }
+}
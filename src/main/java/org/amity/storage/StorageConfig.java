@@ -0,0 +1,413 @@
+package org.amity.storage;
+
+import org.amity.concurrency.executors.ThreadExecutorPool;
+import org.amity.concurrency.wait.WaitStrategy;
+import org.amity.storage.codec.PageCodec;
+
+/**
+ * Tunables of the storage layer, defaults are taken from {@link StorageManager}
+ */
+public class StorageConfig {
+    private PageIOEngine.Mode ioMode = StorageManager.DEFAULT_IO_MODE;
+    private int mappedRegionPages = StorageManager.DEFAULT_MAPPED_REGION_PAGES;
+    private GroupCommitter.DurabilityPolicy durabilityPolicy = StorageManager.DEFAULT_DURABILITY_POLICY;
+    private int syncEveryPages = StorageManager.DEFAULT_SYNC_EVERY_PAGES;
+    private long syncIntervalMillis = StorageManager.DEFAULT_SYNC_INTERVAL_MILLIS;
+    private int metadataFlushThreshold = StorageManager.DEFAULT_METADATA_FLUSH_THRESHOLD;
+    private int readAheadPages = StorageManager.DEFAULT_READ_AHEAD_PAGES;
+    private StorageManager.BatchMode batchMode = StorageManager.DEFAULT_BATCH_MODE;
+    private int batchThreads = StorageManager.MAX_WRITE_THREAD_ALLOWED;
+    private int sparePartitions = StorageManager.DEFAULT_SPARE_PARTITIONS;
+    private int asyncIoThreads = StorageManager.DEFAULT_ASYNC_IO_THREADS;
+    private int asyncQueueDepth = StorageManager.DEFAULT_ASYNC_QUEUE_DEPTH;
+    private int writeCachePages = StorageManager.DEFAULT_WRITE_CACHE_PAGES;
+    private WaitStrategy.Mode readerWaitMode = StorageManager.DEFAULT_READER_WAIT_MODE;
+    private long readerSleepMillis = StorageManager.DEFAULT_READER_SLEEP_MILLIS;
+    private long journalCheckpointBytes = StorageManager.DEFAULT_JOURNAL_CHECKPOINT_BYTES;
+    private long checkpointIntervalMillis = StorageManager.DEFAULT_CHECKPOINT_INTERVAL_MILLIS;
+    private int recoveryThreads = StorageManager.DEFAULT_RECOVERY_THREADS;
+    private boolean pageChecksums = StorageManager.DEFAULT_PAGE_CHECKSUMS;
+    private int scrubPagesPerSecond = StorageManager.DEFAULT_SCRUB_PAGES_PER_SECOND;
+    private long scrubIntervalMillis = StorageManager.DEFAULT_SCRUB_INTERVAL_MILLIS;
+    private PageCodec compressionCodec = StorageManager.DEFAULT_COMPRESSION_CODEC;
+    private int compressionFramePages = StorageManager.DEFAULT_COMPRESSION_FRAME_PAGES;
+    private boolean multiProducerPartitions = StorageManager.DEFAULT_MULTI_PRODUCER_PARTITIONS;
+    private ThreadExecutorPool.Mode executorMode = StorageManager.DEFAULT_EXECUTOR_MODE;
+    private int readerQuantumPages = StorageManager.DEFAULT_READER_QUANTUM_PAGES;
+    private int submissionQueueCapacity = StorageManager.DEFAULT_SUBMISSION_QUEUE_CAPACITY;
+    private long maxReaderLagPages = StorageManager.DEFAULT_MAX_READER_LAG_PAGES;
+    private long producerLingerMillis = StorageManager.DEFAULT_PRODUCER_LINGER_MILLIS;
+    private int producerBatchPages = StorageManager.DEFAULT_PRODUCER_BATCH_PAGES;
+
+    public StorageConfig setIoMode(PageIOEngine.Mode ioMode) {
+        if (ioMode == null) {
+            throw new NullPointerException("io mode cannot be null");
+        }
+        this.ioMode = ioMode;
+        return this;
+    }
+
+    public StorageConfig setMappedRegionPages(int mappedRegionPages) {
+        if (mappedRegionPages <= 0) {
+            throw new IllegalArgumentException("mapped region pages should be positive : " + mappedRegionPages);
+        }
+        this.mappedRegionPages = mappedRegionPages;
+        return this;
+    }
+
+    public StorageConfig setDurabilityPolicy(GroupCommitter.DurabilityPolicy durabilityPolicy) {
+        if (durabilityPolicy == null) {
+            throw new NullPointerException("durability policy cannot be null");
+        }
+        this.durabilityPolicy = durabilityPolicy;
+        return this;
+    }
+
+    public StorageConfig setSyncEveryPages(int syncEveryPages) {
+        if (syncEveryPages <= 0) {
+            throw new IllegalArgumentException("sync every pages should be positive : " + syncEveryPages);
+        }
+        this.syncEveryPages = syncEveryPages;
+        return this;
+    }
+
+    public StorageConfig setSyncIntervalMillis(long syncIntervalMillis) {
+        if (syncIntervalMillis <= 0) {
+            throw new IllegalArgumentException("sync interval should be positive : " + syncIntervalMillis);
+        }
+        this.syncIntervalMillis = syncIntervalMillis;
+        return this;
+    }
+
+    public StorageConfig setMetadataFlushThreshold(int metadataFlushThreshold) {
+        if (metadataFlushThreshold <= 0) {
+            throw new IllegalArgumentException("metadata flush threshold should be positive : " + metadataFlushThreshold);
+        }
+        this.metadataFlushThreshold = metadataFlushThreshold;
+        return this;
+    }
+
+    public StorageConfig setReadAheadPages(int readAheadPages) {
+        if (readAheadPages < 0) {
+            throw new IllegalArgumentException("read ahead pages should not be negative : " + readAheadPages);
+        }
+        this.readAheadPages = readAheadPages;
+        return this;
+    }
+
+    public StorageConfig setBatchMode(StorageManager.BatchMode batchMode) {
+        if (batchMode == null) {
+            throw new NullPointerException("batch mode cannot be null");
+        }
+        this.batchMode = batchMode;
+        return this;
+    }
+
+    public StorageConfig setBatchThreads(int batchThreads) {
+        if (batchThreads <= 0) {
+            throw new IllegalArgumentException("batch threads should be positive : " + batchThreads);
+        }
+        this.batchThreads = batchThreads;
+        return this;
+    }
+
+    public StorageConfig setSparePartitions(int sparePartitions) {
+        if (sparePartitions < 0) {
+            throw new IllegalArgumentException("spare partitions should not be negative : " + sparePartitions);
+        }
+        this.sparePartitions = sparePartitions;
+        return this;
+    }
+
+    public StorageConfig setAsyncIoThreads(int asyncIoThreads) {
+        if (asyncIoThreads <= 0) {
+            throw new IllegalArgumentException("async io threads should be positive : " + asyncIoThreads);
+        }
+        this.asyncIoThreads = asyncIoThreads;
+        return this;
+    }
+
+    public StorageConfig setAsyncQueueDepth(int asyncQueueDepth) {
+        if (asyncQueueDepth <= 0) {
+            throw new IllegalArgumentException("async queue depth should be positive : " + asyncQueueDepth);
+        }
+        this.asyncQueueDepth = asyncQueueDepth;
+        return this;
+    }
+
+    public StorageConfig setWriteCachePages(int writeCachePages) {
+        if (writeCachePages < 0) {
+            throw new IllegalArgumentException("write cache pages should not be negative : " + writeCachePages);
+        }
+        this.writeCachePages = writeCachePages;
+        return this;
+    }
+
+    public StorageConfig setReaderWaitMode(WaitStrategy.Mode readerWaitMode) {
+        if (readerWaitMode == null) {
+            throw new NullPointerException("reader wait mode cannot be null");
+        }
+        this.readerWaitMode = readerWaitMode;
+        return this;
+    }
+
+    public StorageConfig setReaderSleepMillis(long readerSleepMillis) {
+        if (readerSleepMillis <= 0) {
+            throw new IllegalArgumentException("reader sleep millis should be positive : " + readerSleepMillis);
+        }
+        this.readerSleepMillis = readerSleepMillis;
+        return this;
+    }
+
+    public StorageConfig setJournalCheckpointBytes(long journalCheckpointBytes) {
+        if (journalCheckpointBytes < MetadataJournal.RECORD_SIZE) {
+            throw new IllegalArgumentException("journal checkpoint bytes should hold a record : " + journalCheckpointBytes);
+        }
+        this.journalCheckpointBytes = journalCheckpointBytes;
+        return this;
+    }
+
+    public StorageConfig setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+        if (checkpointIntervalMillis <= 0) {
+            throw new IllegalArgumentException("checkpoint interval should be positive : " + checkpointIntervalMillis);
+        }
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+        return this;
+    }
+
+    public StorageConfig setRecoveryThreads(int recoveryThreads) {
+        if (recoveryThreads <= 0) {
+            throw new IllegalArgumentException("recovery threads should be positive : " + recoveryThreads);
+        }
+        this.recoveryThreads = recoveryThreads;
+        return this;
+    }
+
+    public StorageConfig setPageChecksums(boolean pageChecksums) {
+        this.pageChecksums = pageChecksums;
+        return this;
+    }
+
+    public StorageConfig setScrubPagesPerSecond(int scrubPagesPerSecond) {
+        if (scrubPagesPerSecond < 0) {
+            throw new IllegalArgumentException("scrub pages per second should not be negative : " + scrubPagesPerSecond);
+        }
+        this.scrubPagesPerSecond = scrubPagesPerSecond;
+        return this;
+    }
+
+    public StorageConfig setScrubIntervalMillis(long scrubIntervalMillis) {
+        if (scrubIntervalMillis <= 0) {
+            throw new IllegalArgumentException("scrub interval should be positive : " + scrubIntervalMillis);
+        }
+        this.scrubIntervalMillis = scrubIntervalMillis;
+        return this;
+    }
+
+    /**
+     * @param compressionCodec codec of partitions created from now on, null to create uncompressed partitions
+     */
+    public StorageConfig setCompressionCodec(PageCodec compressionCodec) {
+        this.compressionCodec = compressionCodec;
+        return this;
+    }
+
+    public StorageConfig setCompressionFramePages(int compressionFramePages) {
+        if (compressionFramePages <= 0 || compressionFramePages > StorageManager.MAX_COMPRESSION_FRAME_PAGES) {
+            throw new IllegalArgumentException("compression frame pages should be in 1.."
+                    + StorageManager.MAX_COMPRESSION_FRAME_PAGES + " : " + compressionFramePages);
+        }
+        this.compressionFramePages = compressionFramePages;
+        return this;
+    }
+
+    /**
+     * @param multiProducerPartitions true to let several producer threads allocate and write pages
+     *                                of one partition, pages are made readable in page order
+     */
+    public StorageConfig setMultiProducerPartitions(boolean multiProducerPartitions) {
+        this.multiProducerPartitions = multiProducerPartitions;
+        return this;
+    }
+
+    /**
+     * @param executorMode VIRTUAL runs async page operations and batch partition groups on a virtual
+     *                     thread each, falls back to PLATFORM before Java 21
+     */
+    public StorageConfig setExecutorMode(ThreadExecutorPool.Mode executorMode) {
+        if (executorMode == null) {
+            throw new NullPointerException("executor mode cannot be null");
+        }
+        this.executorMode = executorMode.supported();
+        return this;
+    }
+
+    public StorageConfig setReaderQuantumPages(int readerQuantumPages) {
+        if (readerQuantumPages <= 0) {
+            throw new IllegalArgumentException("reader quantum pages should be positive : " + readerQuantumPages);
+        }
+        this.readerQuantumPages = readerQuantumPages;
+        return this;
+    }
+
+    public StorageConfig setSubmissionQueueCapacity(int submissionQueueCapacity) {
+        if (submissionQueueCapacity <= 0) {
+            throw new IllegalArgumentException("submission queue capacity should be positive : "
+                    + submissionQueueCapacity);
+        }
+        this.submissionQueueCapacity = submissionQueueCapacity;
+        return this;
+    }
+
+    /**
+     * @param maxReaderLagPages readable pages not read yet of a partition above which its producers
+     *                          are throttled, 0 to ignore readers
+     */
+    public StorageConfig setMaxReaderLagPages(long maxReaderLagPages) {
+        if (maxReaderLagPages < 0) {
+            throw new IllegalArgumentException("max reader lag pages should not be negative : " + maxReaderLagPages);
+        }
+        this.maxReaderLagPages = maxReaderLagPages;
+        return this;
+    }
+
+    /**
+     * @param producerLingerMillis time a record may wait for its page to fill before the page is written,
+     *                             0 writes every page as soon as its sender is free
+     */
+    public StorageConfig setProducerLingerMillis(long producerLingerMillis) {
+        if (producerLingerMillis < 0) {
+            throw new IllegalArgumentException("producer linger should not be negative : " + producerLingerMillis);
+        }
+        this.producerLingerMillis = producerLingerMillis;
+        return this;
+    }
+
+    public StorageConfig setProducerBatchPages(int producerBatchPages) {
+        if (producerBatchPages <= 0) {
+            throw new IllegalArgumentException("producer batch pages should be positive : " + producerBatchPages);
+        }
+        this.producerBatchPages = producerBatchPages;
+        return this;
+    }
+
+    public PageIOEngine.Mode getIoMode() {
+        return ioMode;
+    }
+
+    public int getMappedRegionPages() {
+        return mappedRegionPages;
+    }
+
+    public GroupCommitter.DurabilityPolicy getDurabilityPolicy() {
+        return durabilityPolicy;
+    }
+
+    public int getSyncEveryPages() {
+        return syncEveryPages;
+    }
+
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    public int getMetadataFlushThreshold() {
+        return metadataFlushThreshold;
+    }
+
+    public int getReadAheadPages() {
+        return readAheadPages;
+    }
+
+    public StorageManager.BatchMode getBatchMode() {
+        return batchMode;
+    }
+
+    public int getBatchThreads() {
+        return batchThreads;
+    }
+
+    public int getSparePartitions() {
+        return sparePartitions;
+    }
+
+    public int getAsyncIoThreads() {
+        return asyncIoThreads;
+    }
+
+    public int getAsyncQueueDepth() {
+        return asyncQueueDepth;
+    }
+
+    public int getWriteCachePages() {
+        return writeCachePages;
+    }
+
+    public WaitStrategy.Mode getReaderWaitMode() {
+        return readerWaitMode;
+    }
+
+    public long getReaderSleepMillis() {
+        return readerSleepMillis;
+    }
+
+    public long getJournalCheckpointBytes() {
+        return journalCheckpointBytes;
+    }
+
+    public long getCheckpointIntervalMillis() {
+        return checkpointIntervalMillis;
+    }
+
+    public int getRecoveryThreads() {
+        return recoveryThreads;
+    }
+
+    public boolean isPageChecksums() {
+        return pageChecksums;
+    }
+
+    public int getScrubPagesPerSecond() {
+        return scrubPagesPerSecond;
+    }
+
+    public long getScrubIntervalMillis() {
+        return scrubIntervalMillis;
+    }
+
+    public PageCodec getCompressionCodec() {
+        return compressionCodec;
+    }
+
+    public int getCompressionFramePages() {
+        return compressionFramePages;
+    }
+
+    public boolean isMultiProducerPartitions() {
+        return multiProducerPartitions;
+    }
+
+    public ThreadExecutorPool.Mode getExecutorMode() {
+        return executorMode;
+    }
+
+    public int getReaderQuantumPages() {
+        return readerQuantumPages;
+    }
+
+    public int getSubmissionQueueCapacity() {
+        return submissionQueueCapacity;
+    }
+
+    public long getMaxReaderLagPages() {
+        return maxReaderLagPages;
+    }
+
+    public long getProducerLingerMillis() {
+        return producerLingerMillis;
+    }
+
+    public int getProducerBatchPages() {
+        return producerBatchPages;
+    }
+}
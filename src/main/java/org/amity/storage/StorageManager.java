@@ -1,7 +1,15 @@
 package org.amity.storage;
 
+import org.amity.concurrency.executors.ThreadExecutorPool;
+import org.amity.concurrency.wait.WaitStrategy;
+import org.amity.storage.codec.PageCodec;
+
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -26,6 +34,73 @@ public interface StorageManager extends AutoCloseable {
     int DEFAULT_PARTITION_SIZE = 128;
     // default db file size in GB
     int DEFAULT_FILE_SIZE = 128;
+    // page I/O engine used by partitions, FILE_CHANNEL is the fallback
+    PageIOEngine.Mode DEFAULT_IO_MODE = PageIOEngine.Mode.MEMORY_MAPPED;
+    // 1024 pages of 4k i.e. 4 MB per mapped region
+    int DEFAULT_MAPPED_REGION_PAGES = 1024;
+    // every write is durable before writePage returns, concurrent writers share one force
+    GroupCommitter.DurabilityPolicy DEFAULT_DURABILITY_POLICY = GroupCommitter.DurabilityPolicy.EVERY_WRITE;
+    // force once 64 pages are pending for EVERY_N_PAGES
+    int DEFAULT_SYNC_EVERY_PAGES = 64;
+    // force every 10 ms for INTERVAL
+    long DEFAULT_SYNC_INTERVAL_MILLIS = 10;
+    // header/master page bit flips coalesced before write back without a sync
+    int DEFAULT_METADATA_FLUSH_THRESHOLD = 64;
+    // readable pages fetched with a missed page by FILE_CHANNEL readers, 0 disables
+    int DEFAULT_READ_AHEAD_PAGES = 16;
+    // readPages/writePages partition groups run on calling thread by default
+    BatchMode DEFAULT_BATCH_MODE = BatchMode.CALLER_THREAD;
+    // direct page buffers retained by the shared pool i.e. 1 MB
+    int DEFAULT_BUFFER_POOL_PAGES = 256;
+    // partitions kept created and header initialized ahead of partition switches, 0 disables
+    int DEFAULT_SPARE_PARTITIONS = 2;
+    // threads completing async page I/O, shared by all partitions i.e. device queue depth
+    int DEFAULT_ASYNC_IO_THREADS = 16;
+    // async page I/Os in flight per partition before callers wait for a slot
+    int DEFAULT_ASYNC_QUEUE_DEPTH = 32;
+    // recently written pages cached off-heap per partition for tailing readers i.e. 1 MB, 0 disables
+    int DEFAULT_WRITE_CACHE_PAGES = 256;
+    // readers park and writer of partition wakes them once a page is readable
+    WaitStrategy.Mode DEFAULT_READER_WAIT_MODE = WaitStrategy.Mode.PARK;
+    // retry interval of SLEEP reader wait mode
+    long DEFAULT_READER_SLEEP_MILLIS = 1;
+    // checkpoint once active journal file reaches 4 MB i.e. ~170K records
+    long DEFAULT_JOURNAL_CHECKPOINT_BYTES = 4L * 1024 * 1024;
+    // checkpoint every second if anything was journaled
+    long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 1000;
+    // partitions replayed in parallel at startup
+    int DEFAULT_RECOVERY_THREADS = 4;
+    // CRC32C of data pages is not stored nor verified by default
+    boolean DEFAULT_PAGE_CHECKSUMS = false;
+    // scrubber I/O budget i.e. 1 MB/s of cold partition pages, 0 disables scrubber
+    int DEFAULT_SCRUB_PAGES_PER_SECOND = 256;
+    // pause between two scrub passes over cold partitions
+    long DEFAULT_SCRUB_INTERVAL_MILLIS = 60_000;
+    // partitions store raw pages unless a codec is configured
+    PageCodec DEFAULT_COMPRESSION_CODEC = null;
+    // consecutive pages compressed together in one frame i.e. 64 KB
+    int DEFAULT_COMPRESSION_FRAME_PAGES = 16;
+    // 1 MB frames at most, frame keeps its page count in a short
+    int MAX_COMPRESSION_FRAME_PAGES = 256;
+    // one writer thread per partition, pages are made readable as soon as they are written
+    boolean DEFAULT_MULTI_PRODUCER_PARTITIONS = false;
+    // pools of platform threads, VIRTUAL needs Java 21
+    ThreadExecutorPool.Mode DEFAULT_EXECUTOR_MODE = ThreadExecutorPool.Mode.PLATFORM;
+    // pages a reader loop reads from a partition before it looks at other partitions
+    int DEFAULT_READER_QUANTUM_PAGES = 64;
+    // producer submissions queued per partition before producers are throttled
+    int DEFAULT_SUBMISSION_QUEUE_CAPACITY = 1024;
+    // producers of a partition are throttled while half a partition is readable and not read, 0 ignores readers
+    long DEFAULT_MAX_READER_LAG_PAGES = DATA_PAGES_PER_HEADER / 2;
+    // a producer page not full is written once its first record waited 5 ms
+    long DEFAULT_PRODUCER_LINGER_MILLIS = 5;
+    // sealed producer pages written by one writePages call i.e. 64 KB
+    int DEFAULT_PRODUCER_BATCH_PAGES = 16;
+
+    /**
+     * How partition groups of a readPages/writePages batch are executed
+     */
+    enum BatchMode {CALLER_THREAD, PARTITION_PARALLEL}
 
     long allocPage(int partNum) throws IOException;
 
@@ -33,6 +108,14 @@ public interface StorageManager extends AutoCloseable {
 
     void allocPart(int oldPartNum, int newPartNum) throws IOException;
 
+    /**
+     * Move writer of a full partition to a pre-allocated spare partition and record it in metadata
+     *
+     * @param oldPartNum full partition i.e. allocPage returned Long.MIN_VALUE
+     * @return new partition number
+     */
+    int switchPartition(int oldPartNum) throws IOException;
+
     /**
      * Allocate new partition its like a topic
      *
@@ -70,6 +153,14 @@ public interface StorageManager extends AutoCloseable {
      */
     void readPage(long page, byte[] buf);
 
+    /**
+     * Read page in buffer from its position, a direct buffer is read without a copy
+     *
+     * @param page
+     * @param buf  buffer with PAGE_SIZE bytes remaining
+     */
+    void readPage(long page, ByteBuffer buf);
+
     /**
      * Write buf to page at given adrs
      *
@@ -78,6 +169,14 @@ public interface StorageManager extends AutoCloseable {
      */
     void writePage(long page, byte[] buf) throws IOException;
 
+    /**
+     * Write buffer from its position to page at given adrs, a direct buffer is written without a copy
+     *
+     * @param page
+     * @param buf  buffer with PAGE_SIZE bytes remaining
+     */
+    void writePage(long page, ByteBuffer buf) throws IOException;
+
     /**
      * Commit the offset and make it available for write
      *
@@ -85,8 +184,36 @@ public interface StorageManager extends AutoCloseable {
      */
     void freePage(long page);
 
+    /**
+     * Async {@link #readPage(long, ByteBuffer)}, buffer must not be touched till future completes
+     *
+     * @param page
+     * @param buf  buffer with PAGE_SIZE bytes remaining
+     * @return future failed with {@link PageException} if page could not be read
+     */
+    CompletableFuture<Void> readPageAsync(long page, ByteBuffer buf);
+
+    /**
+     * Async {@link #writePage(long, ByteBuffer)}, completes once page is written as per durability policy
+     * and readable, buffer must not be touched till future completes
+     *
+     * @param page
+     * @param buf  buffer with PAGE_SIZE bytes remaining
+     * @return future failed with {@link PageException} if page could not be written
+     */
+    CompletableFuture<Void> writePageAsync(long page, ByteBuffer buf);
+
+    /**
+     * Async {@link #freePage(long)}
+     *
+     * @param page
+     * @return future failed with {@link PageException} if offset could not be committed
+     */
+    CompletableFuture<Void> freePageAsync(long page);
+
     /**
      * Read gives page number in buffer
+     * Pages failing in a batch are reported together by {@link PageBatchException}
      *
      * @param pages
      * @param bufs
@@ -95,12 +222,33 @@ public interface StorageManager extends AutoCloseable {
 
     /**
      * Write buf to page at given address containing partition, header and page number
+     * Pages failing in a batch are reported together by {@link PageBatchException}
      *
      * @param pages
      * @param bufs
      */
     void writePages(List<Long> pages, List<byte[]> bufs);
 
+    /**
+     * Wait as per reader wait strategy till a page of partition is readable
+     *
+     * @param partNum partition to read
+     * @param timeout max time to wait
+     * @param unit    unit of timeout
+     * @return virtual page number of first readable page or Long.MIN_VALUE if none became readable
+     */
+    long awaitReadablePage(int partNum, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Send readable pages to target without copying them through heap buffers and commit their offsets,
+     * offset of a page is committed only after it is completely transferred
+     *
+     * @param pages  pages in the order to send
+     * @param target channel e.g. client socket
+     * @return bytes transferred
+     */
+    long transferPages(List<Long> pages, WritableByteChannel target);
+
     /**
      * Get virtual page number
      *
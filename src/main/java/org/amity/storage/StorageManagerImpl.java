@@ -1,14 +1,37 @@
 package org.amity.storage;
 
+import org.amity.concurrency.executors.PartitionReaderThreadExecutor;
+import org.amity.concurrency.executors.PartitionSubmissionQueues;
+import org.amity.concurrency.executors.RecoveryDaemonThreadExecutor;
+import org.amity.concurrency.executors.ThreadExecutorPool;
+import org.amity.concurrency.factory.ThreadFactoryBuilder;
+import org.amity.concurrency.factory.VirtualThreads;
 import org.amity.helper.FileAndDirHelper;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.OptionalInt;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.IntStream;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Partition will contain
@@ -34,7 +57,7 @@ import java.util.stream.IntStream;
  * Reader Algo :
  * configured number of reader threads
  * 2. Reader thread will check if any page is available to read i.e. 1
- * 2.1 If not then it will retry after configured time
+ * 2.1 If not then it will wait as per reader wait strategy, writer signals it once a page is readable
  * 2.2 else read the page and send to the connector/client and update the offset i.e turned the same bit to 0
  * <p>
  * Meta Algo :
@@ -55,22 +78,91 @@ public class StorageManagerImpl implements StorageManager {
 
     //    public AtomicInteger partitionCounter;
     public static String dbDir;
-    public Map<Integer, PartitionInfo> partitionInfo;
+    /**
+     * open partitions by partition number
+     */
+    public final PartitionRegistry partitionInfo = new PartitionRegistry();
     private MetadataInfo metadataInfo;
+    private final StorageConfig config;
+    private static final String PARTITION_BATCH_THREAD = "pb-thread";
+    /**
+     * bounded pool running partition groups of a batch, null for CALLER_THREAD batch mode
+     */
+    private final ExecutorService batchExecutor;
+    private final SparePartitionPool sparePartitions;
+    /**
+     * journal of header bit flips and partition switches, header pages are written back at its checkpoints
+     */
+    private MetadataJournal journal;
+    /**
+     * verifies pages of cold partitions against their checksums, null if checksums or scrubbing are disabled
+     */
+    private final PageScrubber scrubber;
 
 
     int writeThreads;
     int readThreads;
 
     public StorageManagerImpl(String dbDir, int writeThreads, int readThreads) throws IOException {
+        this(dbDir, writeThreads, readThreads, new StorageConfig());
+    }
+
+    public StorageManagerImpl(String dbDir, int writeThreads, int readThreads, StorageConfig config) throws IOException {
+        this.config = config;
+        this.batchExecutor = config.getBatchMode() == BatchMode.PARTITION_PARALLEL ? newBatchExecutor(config) : null;
         StorageManagerImpl.dbDir = dbDir == null ? System.getProperty("user.home") : dbDir;
         this.writeThreads = writeThreads == 0 ? DEFAULT_OPTIMIZED_WRITE_THREADS : writeThreads;
         this.readThreads = readThreads == 0 ? DEFAULT_OPTIMIZED_READ_THREADS : readThreads;
         // This will create new meta file or initialize meta file
         loadMetadata();
+        // replay journal of last run before any partition is opened
+        recover();
+        this.sparePartitions = new SparePartitionPool(config.getSparePartitions(),
+                metadataInfo, this::openPartition);
         // It has nothing to do with
         allocPart();
+        // spares are numbered after active partitions
+        this.sparePartitions.start();
+        if (config.isPageChecksums() && config.getScrubPagesPerSecond() > 0) {
+            this.scrubber = new PageScrubber(this::coldPartitions, this::getPartInfo, config);
+            this.scrubber.start();
+        } else {
+            this.scrubber = null;
+        }
+    }
+
+    /**
+     * Partitions are opened lazily, so partitions marked readable on disk are scrubbed too, not only opened ones
+     *
+     * @return numbers of opened or readable partitions no writer is active on
+     */
+    private Set<Integer> coldPartitions() {
+        Set<Integer> cold = new TreeSet<>();
+        for (PartitionInfo pi : partitionInfo.values()) {
+            cold.add(pi.getPartitionNumber());
+        }
+        for (int partNum : metadataInfo.getReadablePartitions()) {
+            if (FileAndDirHelper.partitionExists(partNum)) {
+                cold.add(partNum);
+            }
+        }
+        cold.removeIf(metadataInfo::isActivePartition);
+        return cold;
+    }
 
+    private static ExecutorService newBatchExecutor(StorageConfig config) {
+        if (config.getExecutorMode() == ThreadExecutorPool.Mode.VIRTUAL) {
+            // a virtual thread per partition group, batch threads does not bound them
+            return VirtualThreads.newThreadPerTaskExecutor(PARTITION_BATCH_THREAD);
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                config.getBatchThreads(), config.getBatchThreads(), 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+                .setNamePrefix(PARTITION_BATCH_THREAD)
+                .setDaemon(true)
+                .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     private void allocReaderPage(int partNum) throws IOException {
@@ -80,21 +172,38 @@ public class StorageManagerImpl implements StorageManager {
 
 
     /**
-     * Allocate partition equivalent to the max threads allowed to write
+     * Open active partitions of metadata (one per write thread) in parallel,
+     * partitions missing on disk i.e. first start are created.
+     * All other partitions are opened on first touch, so startup does not depend on total partitions.
      */
     @Override
     public void allocPart() {
-        IntStream.range(0, MAX_WRITE_THREAD_ALLOWED)
-                .forEachOrdered(partitionNum -> {
-//                    int oldPart = metadataInfo.nextAvailablePartition.get();
-//                    int newPart = metadataInfo.nextAvailablePartition.updateAndGet((int x) -> Math.max(x, oldPart) + 1);
-                    try {
-                        this.allocPart(Short.MIN_VALUE, partitionNum);
-                        System.out.println(" Partition allocated --> " + partitionNum);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
+        Map<Integer, Callable<Void>> tasks = new TreeMap<>();
+        for (short activePartition : metadataInfo.getActivePartitions()) {
+            int partitionNum = activePartition;
+            tasks.put(partitionNum, () -> {
+                if (!this.partitionInfo.contains(partitionNum)) {
+                    registerPartition(openPartition(partitionNum));
+                    System.out.println(" Partition allocated --> " + partitionNum);
+                }
+                return null;
+            });
+        }
+        runPartitionTasks(tasks);
+    }
+
+    /**
+     * Run startup task of each partition in parallel and wait for all of them
+     */
+    private void runPartitionTasks(Map<Integer, Callable<Void>> tasks) {
+        RecoveryDaemonThreadExecutor executor = new RecoveryDaemonThreadExecutor(
+                Math.min(config.getRecoveryThreads(), Math.max(1, tasks.size())));
+        executor.initExecutorPool();
+        try {
+            executor.recover(tasks);
+        } finally {
+            executor.shutdown();
+        }
     }
 
     /**
@@ -108,7 +217,8 @@ public class StorageManagerImpl implements StorageManager {
     @Override
     public void allocPart(int oldPartNum, int newPartNum) throws IOException {
 //        metadataInfo.nextAvailablePartition.updateAndGet((int x) -> Math.max(x, newPartNum) + 1);
-        int partNum = this.allocSinglePartition(newPartNum);
+        PartitionInfo spare = this.sparePartitions.take(newPartNum);
+        int partNum = spare == null ? this.allocSinglePartition(newPartNum) : registerPartition(spare);
         System.out.println("allocated : " + partNum);
         // TODO handle failure scenario
         // update the meta information about the partition
@@ -124,28 +234,156 @@ public class StorageManagerImpl implements StorageManager {
     public int allocSinglePartition(int newPartNum) throws IOException {
         // M.P --> H.P --> D.Pgs
         // Allocate all the partition
-        if (this.partitionInfo.containsKey(newPartNum)) {
+        if (this.partitionInfo.contains(newPartNum)) {
             throw new IllegalStateException("partition number " + newPartNum + " already exists");
         }
-        PartitionInfo pInfo = new PartitionInfo(newPartNum, metadataInfo);
-        this.partitionInfo.put(newPartNum, pInfo);
+        if (newPartNum < 0 || newPartNum >= MAX_PARTITION_ALLOWED) {
+            throw new PageException(" Incorrect partition number " + newPartNum + " of " + MAX_PARTITION_ALLOWED);
+        }
+        registerPartition(openPartition(newPartNum));
+        return newPartNum;
+    }
+
+
+    /**
+     * Open partition files written before as they are, e.g. a full partition not read yet,
+     * otherwise create a new partition
+     *
+     * @param partNum partition number
+     * @return opened partition
+     */
+    private PartitionInfo openPartition(int partNum) throws IOException {
+        if (!FileAndDirHelper.partitionExists(partNum)) {
+            return createPartition(partNum);
+        }
+        PartitionInfo pInfo = new PartitionInfo(partNum, metadataInfo, config, journal);
+        pInfo.allocateFileForPartition(FileAndDirHelper.PARTITION_PATH, partNum);
+        return pInfo;
+    }
+
+    /**
+     * Create partition directory and files with master and header pages initialized
+     *
+     * @param partNum partition number
+     * @return partition ready for writes
+     */
+    private PartitionInfo createPartition(int partNum) throws IOException {
+        FileAndDirHelper.createPartitionDirectory(partNum);
+        PartitionInfo pInfo = new PartitionInfo(partNum, metadataInfo, config, journal);
 
         // this will on load writer  and reader
-        pInfo.allocateFileForPartition(FileAndDirHelper.PARTITION_PATH, newPartNum);
+        pInfo.allocateFileForPartition(FileAndDirHelper.PARTITION_PATH, partNum);
 
         // allocate reader page in partition
         pInfo.allocReaderPage();
+        return pInfo;
+    }
 
-        // Update the meta information and if already exists then do nothing or else
-        if (MAX_PARTITION_ALLOWED != MetadataInfo.totalPartitionCounter.get()) {
-            throw new PageException(" Incorrect # of partition allocated"
-                    + MAX_PARTITION_ALLOWED + " --> " + MetadataInfo.totalPartitionCounter.get());
+    private int registerPartition(PartitionInfo pInfo) {
+        if (!this.partitionInfo.register(pInfo)) {
+            throw new IllegalStateException("partition number " + pInfo.getPartitionNumber() + " already exists");
         }
+        return pInfo.getPartitionNumber();
+    }
+
+    /**
+     * Partition is taken from spare pool so switch does not open files or initialize pages,
+     * only the partition map and active partitions in metadata are updated
+     *
+     * @param oldPartNum full partition i.e. allocPage returned Long.MIN_VALUE
+     * @return new partition number
+     */
+    @Override
+    public int switchPartition(int oldPartNum) throws IOException {
+        int slot = metadataInfo.activeSlotOf(oldPartNum);
+        if (slot < 0) {
+            // a concurrent writer already switched it, continue on current partition of the slot
+            int current = metadataInfo.currentActivePartition(oldPartNum);
+            if (current < 0) {
+                throw new PageException("partition " + oldPartNum + " is not active");
+            }
+            return current;
+        }
+        PartitionInfo spare = this.sparePartitions.take();
+        // registered before it is visible as active, so nobody opens it a second time
+        int newPartNum = registerPartition(spare);
+        if (!metadataInfo.switchActivePartition(slot, oldPartNum, newPartNum)) {
+            // another writer of this slot switched first, continue on its partition
+            this.partitionInfo.remove(spare);
+            this.sparePartitions.giveBack(spare);
+            return metadataInfo.getActivePartition(slot);
+        }
+        journal.append(MetadataJournal.RecordType.PARTITION_SWITCHED, newPartNum, 0, oldPartNum);
+        journal.force();
+        metadataInfo.publish();
         return newPartNum;
     }
 
+    /**
+     * Replay journal left by last run :
+     * 1. partition switches are applied on metadata in order
+     * 2. page records are applied per partition in parallel on header pages loaded from disk,
+     * each partition is written back and closed
+     * 3. journal is emptied and checkpoints are started
+     * Recovery time depends on journal size (bounded by checkpoints), not on data size.
+     */
+    private void recover() {
+        try {
+            this.journal = new MetadataJournal(FileAndDirHelper.DEFAULT_DB_PATH, config);
+            List<MetadataJournal.Record> records = this.journal.replay();
+            if (!records.isEmpty()) {
+                Map<Integer, List<MetadataJournal.Record>> byPartition = new TreeMap<>();
+                for (MetadataJournal.Record record : records) {
+                    if (record.getType() == MetadataJournal.RecordType.PARTITION_SWITCHED) {
+                        replaySwitch(record.getArg(), record.getPartition());
+                    } else {
+                        byPartition.computeIfAbsent(record.getPartition(), k -> new ArrayList<>()).add(record);
+                    }
+                }
+                Map<Integer, Callable<Void>> tasks = new TreeMap<>();
+                byPartition.forEach((partNum, partRecords) -> tasks.put(partNum, () -> {
+                    FileAndDirHelper.createPartitionDirectory(partNum);
+                    PartitionInfo pInfo = new PartitionInfo(partNum, metadataInfo, config);
+                    pInfo.allocateFileForPartition(FileAndDirHelper.PARTITION_PATH, partNum);
+                    try {
+                        pInfo.applyJournalRecords(partRecords);
+                    } finally {
+                        // close writes back recovered header pages
+                        pInfo.close();
+                    }
+                    return null;
+                }));
+                runPartitionTasks(tasks);
+                System.out.println("recovered " + records.size() + " journal records of " + tasks.size() + " partitions");
+            }
+            this.journal.reset();
+            this.journal.start(this::checkpointPartitions);
+        } catch (IOException e) {
+            throw new PageException("could not recover journal: " + e.getMessage());
+        }
+    }
+
+    private void replaySwitch(int oldPartNum, int newPartNum) throws IOException {
+        // already applied if new partition is active
+        if (!metadataInfo.isActivePartition(newPartNum) && metadataInfo.isActivePartition(oldPartNum)) {
+            metadataInfo.updateActiveWritableAndReadablePartition((short) oldPartNum, (short) newPartNum, (short) (newPartNum + 1));
+        }
+    }
+
+    /**
+     * Journal checkpoint : commit metadata and write back header and master pages of all open partitions,
+     * previous journal file with its partition switches is truncated after this returns
+     */
+    private void checkpointPartitions() throws IOException {
+        // a publish may have returned with its switch not committed yet, another thread holding commit lock
+        metadataInfo.sync();
+        for (PartitionInfo pi : this.partitionInfo.values()) {
+            pi.checkpoint();
+        }
+    }
 
     private void loadMetadata() {
+        FileAndDirHelper.createDbDirectory();
         // create a file /db/meta
         metadataInfo = new MetadataInfo(FileAndDirHelper.DEFAULT_DB_PATH + "/" + "meta");
         // create new meta file or load existing meta information
@@ -164,17 +402,20 @@ public class StorageManagerImpl implements StorageManager {
      */
     @Override
     public int assignNewPartitionAndUpdateMeta(int oldPartNum, int newPartNum) throws IOException {
-        OptionalInt existingPart = IntStream.range(0, metadataInfo.activePartitions.length)
-                .filter(activePartition -> activePartition == newPartNum).findFirst();
         // this is a case when DB restarts
-        if (existingPart.isPresent()) {
+        if (metadataInfo.isActivePartition(newPartNum)) {
             // TODO : change to warn message
             System.out.println("Partition is already active " + newPartNum);
 //            throw new DuplicateRequestException("Partition is already active " + newPartNum);
         } else {
             // when DB loaded first time or thread asking for new partition
-            metadataInfo.updateActiveWritableAndReadablePartition((short) oldPartNum, (short) newPartNum, (short) (newPartNum + 1));
-            metadataInfo.nextAvailablePartition.updateAndGet((int x) -> Math.max(x, newPartNum) + 1);
+            int slot = metadataInfo.activeSlotOf(oldPartNum);
+            if (slot < 0 || !metadataInfo.switchActivePartition(slot, oldPartNum, newPartNum)) {
+                throw new PageException("partition " + oldPartNum + " is not active");
+            }
+            journal.append(MetadataJournal.RecordType.PARTITION_SWITCHED, newPartNum, 0, oldPartNum);
+            journal.force();
+            metadataInfo.publish();
         }
 
         return newPartNum;
@@ -184,7 +425,15 @@ public class StorageManagerImpl implements StorageManager {
     @Override
     public void readPage(long page, byte[] buf) {
         if (buf.length != PAGE_SIZE) {
-            throw new IllegalArgumentException("writePage expects a page-sized buffer");
+            throw new IllegalArgumentException("readPage expects a page-sized buffer");
+        }
+        readPage(page, ByteBuffer.wrap(buf));
+    }
+
+    @Override
+    public void readPage(long page, ByteBuffer buf) {
+        if (buf.remaining() != PAGE_SIZE) {
+            throw new IllegalArgumentException("readPage expects a page-sized buffer");
         }
         int partNum = StorageManager.getPartNum(page);
         int pageNum = StorageManager.getPageNum(page);
@@ -209,6 +458,14 @@ public class StorageManagerImpl implements StorageManager {
         if (buf.length != PAGE_SIZE) {
             throw new IllegalArgumentException("writePage expects a page-sized buffer");
         }
+        writePage(page, ByteBuffer.wrap(buf));
+    }
+
+    @Override
+    public void writePage(long page, ByteBuffer buf) throws IOException {
+        if (buf.remaining() != PAGE_SIZE) {
+            throw new IllegalArgumentException("writePage expects a page-sized buffer");
+        }
         int partNum = StorageManager.getPartNum(page);
         int pageNum = StorageManager.getPageNum(page);
         PartitionInfo pi = getPartInfo(partNum);
@@ -216,10 +473,25 @@ public class StorageManagerImpl implements StorageManager {
         try {
             pi.writePage(pageNum, buf);
         } catch (IOException e) {
+            abandonQuietly(pi, Collections.singletonList(pageNum));
             throw new PageException("could not write partition " + partNum + ": " + e.getMessage());
+        } catch (RuntimeException e) {
+            abandonQuietly(pi, Collections.singletonList(pageNum));
+            throw e;
         }
-        pi.updateReaderPageBit(pageNum);
+        pi.pageWritten(pageNum);
+    }
 
+    /**
+     * Give up pages whose write failed so they do not hold back later pages of their partition
+     */
+    private static void abandonQuietly(PartitionInfo pi, List<Integer> pageNums) {
+        try {
+            pi.abandonPages(pageNums);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("could not abandon pages " + pageNums + " of partition " + pi.getPartitionNumber()
+                    + ": " + e.getMessage());
+        }
     }
 
     /**
@@ -249,10 +521,55 @@ public class StorageManagerImpl implements StorageManager {
             return Long.MIN_VALUE;
         }
         // write down the new page
-        pi.writePage(partNum, new byte[PAGE_SIZE]);
+        pi.writePage(allocatedPage, PageBufferPool.zeroPage());
         return StorageManager.getVirtualPageNum(partNum, allocatedPage);
     }
 
+    /**
+     * Allocate up to count pages of partition without writing them (no zero page, no group commit),
+     * each page is made readable by its write or has to be given up with {@link #abandonPages(List)}
+     *
+     * @param partNum partition number to be allocated
+     * @param count   pages wanted
+     * @return virtual page numbers, fewer than count once partition is full
+     */
+    public List<Long> allocPages(int partNum, int count) throws IOException {
+        PartitionInfo pi = getPartInfo(partNum);
+        List<Integer> pageNums = new ArrayList<>(count);
+        try {
+            while (pageNums.size() < count) {
+                int pageNum = pi.allocPage();
+                if (pageNum == Integer.MIN_VALUE) {
+                    break;
+                }
+                pageNums.add(pageNum);
+            }
+        } catch (IOException | RuntimeException e) {
+            abandonQuietly(pi, pageNums);
+            throw e;
+        }
+        List<Long> pages = new ArrayList<>(pageNums.size());
+        for (int pageNum : pageNums) {
+            pages.add(StorageManager.getVirtualPageNum(partNum, pageNum));
+        }
+        return pages;
+    }
+
+    /**
+     * Give up allocated pages which will not be written, see {@link PartitionInfo#abandonPages(List)}
+     *
+     * @param pages virtual page numbers
+     */
+    public void abandonPages(List<Long> pages) throws IOException {
+        for (Map.Entry<Integer, List<Integer>> group : groupByPartition(pages).entrySet()) {
+            List<Integer> pageNums = new ArrayList<>(group.getValue().size());
+            for (int index : group.getValue()) {
+                pageNums.add(StorageManager.getPageNum(pages.get(index)));
+            }
+            getPartInfo(group.getKey()).abandonPages(pageNums);
+        }
+    }
+
     @Override
     public void freePage(long page) {
         int partNum = StorageManager.getPartNum(page);
@@ -266,49 +583,364 @@ public class StorageManagerImpl implements StorageManager {
         }
     }
 
-    private PartitionInfo getPartInfo(int partNum) {
+    @Override
+    public CompletableFuture<Void> readPageAsync(long page, ByteBuffer buf) {
+        if (buf.remaining() != PAGE_SIZE) {
+            throw new IllegalArgumentException("readPageAsync expects a page-sized buffer");
+        }
+        int partNum = StorageManager.getPartNum(page);
+        int pageNum = StorageManager.getPageNum(page);
+        PartitionInfo pi = getPartInfo(partNum);
+
+        return asPageFailure(pi.readPageAsync(pageNum, buf), "read", partNum);
+    }
+
+    /**
+     * Page is made readable once its write completes
+     */
+    @Override
+    public CompletableFuture<Void> writePageAsync(long page, ByteBuffer buf) {
+        if (buf.remaining() != PAGE_SIZE) {
+            throw new IllegalArgumentException("writePageAsync expects a page-sized buffer");
+        }
+        int partNum = StorageManager.getPartNum(page);
+        int pageNum = StorageManager.getPageNum(page);
+        PartitionInfo pi = getPartInfo(partNum);
+
+        return asPageFailure(pi.writePageAsync(pageNum, buf).whenComplete((v, e) -> {
+            if (e != null) {
+                abandonQuietly(pi, Collections.singletonList(pageNum));
+            }
+        }).thenRun(() -> {
+            try {
+                pi.pageWritten(pageNum);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }), "write", partNum);
+    }
+
+    /**
+     * Commit offset only touches cached header pages, it is run on async I/O pool as it may flush them
+     */
+    @Override
+    public CompletableFuture<Void> freePageAsync(long page) {
+        return CompletableFuture.runAsync(() -> freePage(page), AsyncPageChannel.executor(config));
+    }
+
+    /**
+     * Report failure of an async page operation as PageException like its blocking variant
+     */
+    private static CompletableFuture<Void> asPageFailure(CompletableFuture<Void> future, String operation, int partNum) {
+        return future.handle((v, e) -> {
+            if (e == null) {
+                return null;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof PageException) {
+                throw (PageException) cause;
+            }
+            throw new PageException("could not " + operation + " partition " + partNum + ": " + cause.getMessage());
+        });
+    }
+
+    /**
+     * Partition not opened at startup is opened on first touch, e.g. reader draining an old partition
+     */
+    PartitionInfo getPartInfo(int partNum) {
         PartitionInfo pi = this.partitionInfo.get(partNum);
-        if (pi == null) {
+        if (pi != null) {
+            return pi;
+        }
+        if (partNum < 0 || partNum >= MAX_PARTITION_ALLOWED || !FileAndDirHelper.partitionExists(partNum)) {
             throw new NoSuchElementException(" No Partition " + partNum);
         }
-        return pi;
+        try {
+            return this.partitionInfo.getOrOpen(partNum, k -> {
+                // a spare is already open
+                PartitionInfo spare = this.sparePartitions.take(k);
+                return spare != null ? spare : openPartition(k);
+            });
+        } catch (IOException e) {
+            throw new PageException("could not open partition " + partNum + ": " + e.getMessage());
+        }
     }
 
     /**
+     * Batch is grouped by partition, each partition merges adjacent pages into scattering reads
+     *
      * @param pages pages to read
      * @param bufs  byte buffers
+     * @throws PageBatchException with failed pages, other pages are read
      */
     @Override
     public void readPages(List<Long> pages, List<byte[]> bufs) {
         if (pages.size() != bufs.size()) {
             throw new PageException("pages request to read " + pages.size() + ":: not equal to buffersize :  " + bufs.size());
         }
-        AtomicInteger counter = new AtomicInteger(0);
-        pages.forEach(page -> {
-            readPage(page, bufs.get(counter.get()));
-            counter.getAndIncrement();
-        });
+        executeBatch(pages, bufs, false, "readPages", PartitionInfo::readPages);
     }
 
+    /**
+     * Batch is grouped by partition, each partition writes its contiguous page runs as gathering writes
+     * with a single force and a single header/master update for its group
+     *
+     * @param pages pages to write
+     * @param bufs  byte buffers
+     * @throws PageBatchException with failed pages, other pages are written
+     */
     @Override
     public void writePages(List<Long> pages, List<byte[]> bufs) {
         if (pages.size() != bufs.size()) {
             throw new PageException("pages request to write " + pages.size() + ":: not equal to buffersize :  " + bufs.size());
         }
-        AtomicInteger counter = new AtomicInteger(0);
-        pages.forEach(page -> {
+        executeBatch(pages, bufs, true, "writePages", (pi, pageNums, partBufs) -> {
             try {
-                writePage(page, bufs.get(counter.get()));
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+                pi.writePages(pageNums, partBufs);
+            } catch (IOException | RuntimeException e) {
+                abandonQuietly(pi, pageNums);
+                throw e;
             }
-            counter.getAndIncrement();
+            pi.pagesWritten(pageNums);
         });
     }
 
     @Override
-    public void close() {
+    public long awaitReadablePage(int partNum, long timeout, TimeUnit unit) throws InterruptedException {
+        int pageNum = getPartInfo(partNum).awaitReadablePage(timeout, unit);
+        return pageNum < 0 ? Long.MIN_VALUE : StorageManager.getVirtualPageNum(partNum, pageNum);
+    }
+
+    /**
+     * Start readThreads work stealing reader loops over all readable partitions,
+     * in PLATFORM executor mode they hold every thread of returned executor
+     *
+     * @param consumer receives pages, pages of a partition in page order
+     * @return executor running reader loops, shut it down to stop them
+     */
+    public PartitionReaderThreadExecutor startReaders(PartitionPageReader.PageConsumer consumer) {
+        PartitionReaderThreadExecutor readers = new PartitionReaderThreadExecutor(this.readThreads,
+                config.getExecutorMode());
+        readers.initExecutorPool();
+        readers.startReaders(new PartitionPageReader(this, this.metadataInfo, consumer), this.readThreads,
+                config.getReaderQuantumPages(), TimeUnit.MILLISECONDS.toNanos(config.getReaderSleepMillis()));
+        return readers;
+    }
 
+    public StorageConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @param slot writer slot, 0 till MAX_WRITE_THREAD_ALLOWED - 1
+     * @return partition writers of slot write to now
+     */
+    public int activePartition(int slot) {
+        return this.metadataInfo.getActivePartition(slot);
+    }
+
+    /**
+     * @return readable pages of partition not read yet, 0 if partition is not open
+     */
+    public long readerLag(int partNum) {
+        PartitionInfo pi = this.partitionInfo.get(partNum);
+        return pi != null ? pi.readablePages() : 0;
+    }
+
+    /**
+     * Admission queues for producers of this storage, throttled by queue depth and reader lag as configured
+     *
+     * @param <T> producer submission
+     */
+    public <T> PartitionSubmissionQueues<T> newSubmissionQueues() {
+        return new PartitionSubmissionQueues<>(MAX_PARTITION_ALLOWED, config.getSubmissionQueueCapacity(),
+                config.getMaxReaderLagPages(), this::readerLag,
+                TimeUnit.MILLISECONDS.toNanos(config.getReaderSleepMillis()));
+    }
+
+    /**
+     * Pages are sent in request order, each run of pages of same partition is one partition transfer
+     *
+     * @param pages  pages in the order to send
+     * @param target channel e.g. client socket
+     * @return bytes transferred
+     */
+    @Override
+    public long transferPages(List<Long> pages, WritableByteChannel target) {
+        long total = 0;
+        int start = 0;
+        for (int i = 1; i <= pages.size(); i++) {
+            int partNum = StorageManager.getPartNum(pages.get(i - 1));
+            if (i == pages.size() || StorageManager.getPartNum(pages.get(i)) != partNum) {
+                List<Integer> pageNums = new ArrayList<>(i - start);
+                for (int k = start; k < i; k++) {
+                    pageNums.add(StorageManager.getPageNum(pages.get(k)));
+                }
+                PartitionInfo pi = getPartInfo(partNum);
+                try {
+                    total += pi.transferPages(pageNums, target);
+                } catch (IOException e) {
+                    throw new PageException("could not transfer partition " + partNum + ": " + e.getMessage());
+                }
+                start = i;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Work on one partition group of a batch
+     */
+    private interface PartitionBatchTask {
+        void run(PartitionInfo pi, List<Integer> pageNums, List<byte[]> bufs) throws IOException;
+    }
+
+    /**
+     * Split batch by partition and run each group as per batch mode :
+     * CALLER_THREAD      - groups run one after other on calling thread
+     * PARTITION_PARALLEL - groups run concurrently on batch pool, last group on calling thread
+     * Buffers are filled/read in place so results stay in request order, failures are collected per page.
+     */
+    private void executeBatch(List<Long> pages, List<byte[]> bufs, boolean isWriter, String operation,
+                              PartitionBatchTask task) {
+        Map<Integer, RuntimeException> failures = new ConcurrentHashMap<>();
+        List<Future<?>> running = new ArrayList<>();
+        Iterator<Map.Entry<Integer, List<Integer>>> groups = groupByPartition(pages).entrySet().iterator();
+        while (groups.hasNext()) {
+            Map.Entry<Integer, List<Integer>> group = groups.next();
+            Runnable work = () -> runPartitionGroup(group.getKey(), group.getValue(), pages, bufs, isWriter, task, failures);
+            if (this.batchExecutor != null && groups.hasNext()) {
+                try {
+                    running.add(this.batchExecutor.submit(work));
+                } catch (RejectedExecutionException e) {
+                    // executor shut down, groups submitted so far are still waited for
+                    work.run();
+                }
+            } else {
+                work.run();
+            }
+        }
+        // every group is waited for, caller acts on the batch (e.g. abandons failed pages) once none is in flight
+        boolean interrupted = false;
+        Throwable unexpected = null;
+        for (Future<?> future : running) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    unexpected = e.getCause();
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (unexpected != null) {
+            throw new PageException("unexpected failure in " + operation + ": " + unexpected);
+        }
+        if (!failures.isEmpty()) {
+            throw new PageBatchException(operation, failures);
+        }
+    }
+
+    private void runPartitionGroup(int partNum, List<Integer> indexes, List<Long> pages, List<byte[]> bufs,
+                                   boolean isWriter, PartitionBatchTask task, Map<Integer, RuntimeException> failures) {
+        PartitionInfo pi;
+        try {
+            pi = getPartInfo(partNum);
+        } catch (RuntimeException e) {
+            indexes.forEach(index -> failures.put(index, e));
+            return;
+        }
+        List<Integer> accepted = new ArrayList<>(indexes.size());
+        List<Integer> pageNums = new ArrayList<>(indexes.size());
+        List<byte[]> partBufs = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            byte[] buf = bufs.get(index);
+            int pageNum = StorageManager.getPageNum(pages.get(index));
+            if (buf.length != PAGE_SIZE) {
+                failures.put(index, new IllegalArgumentException("batch expects page-sized buffers"));
+            } else if (pi.isNotAllocatedPage(pageNum, isWriter)) {
+                failures.put(index, new PageException("page " + pageNum + " is not allocated"));
+            } else {
+                accepted.add(index);
+                pageNums.add(pageNum);
+                partBufs.add(buf);
+            }
+        }
+        if (pageNums.isEmpty()) {
+            return;
+        }
+        try {
+            task.run(pi, pageNums, partBufs);
+        } catch (PageBatchException e) {
+            // only listed pages of group failed e.g. checksum mismatch
+            e.getFailures().forEach((k, failure) -> failures.put(accepted.get(k), failure));
+        } catch (IOException | RuntimeException e) {
+            PageException failure = new PageException("could not " + (isWriter ? "write" : "read") + " partition "
+                    + partNum + ": " + e.getMessage());
+            accepted.forEach(index -> failures.put(index, failure));
+        }
+    }
+
+    /**
+     * @param pages virtual page numbers
+     * @return partition number to indexes of its pages in request order
+     */
+    private static Map<Integer, List<Integer>> groupByPartition(List<Long> pages) {
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < pages.size(); i++) {
+            groups.computeIfAbsent(StorageManager.getPartNum(pages.get(i)), k -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    @Override
+    public void close() {
+        if (this.batchExecutor != null) {
+            this.batchExecutor.shutdown();
+        }
+        if (this.scrubber != null) {
+            try {
+                this.scrubber.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            this.sparePartitions.close();
+        } catch (Exception e) {
+            System.err.println("could not close spare partitions: " + e.getMessage());
+        }
+        try {
+            this.journal.checkpoint();
+        } catch (Exception e) {
+            System.err.println("could not checkpoint journal: " + e.getMessage());
+        }
+        // partition close forces pending pages and stops its interval sync, journal is still open for it,
+        // removed first so a background checkpoint does not write back a closed partition
+        for (PartitionInfo pi : this.partitionInfo.values()) {
+            this.partitionInfo.remove(pi);
+            try {
+                pi.close();
+            } catch (Exception e) {
+                System.err.println("could not close partition " + pi.getPartitionNumber() + ": " + e.getMessage());
+            }
+        }
+        try {
+            this.journal.close();
+        } catch (Exception e) {
+            System.err.println("could not close journal: " + e.getMessage());
+        }
+        try {
+            this.metadataInfo.close();
+        } catch (Exception e) {
+            System.err.println("could not close metadata: " + e.getMessage());
+        }
     }
 
 }
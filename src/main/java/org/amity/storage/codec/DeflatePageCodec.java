@@ -0,0 +1,55 @@
+package org.amity.storage.codec;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw deflate (no zlib header and adler, pages have their own checksums), one deflater/inflater per thread
+ */
+public class DeflatePageCodec implements PageCodec {
+    private static final byte ID = 1;
+    private final ThreadLocal<Deflater> deflater;
+    private final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    /**
+     * @param level deflate level 0-9 or Deflater.DEFAULT_COMPRESSION
+     */
+    public DeflatePageCodec(int level) {
+        if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("invalid deflate level : " + level);
+        }
+        this.deflater = ThreadLocal.withInitial(() -> new Deflater(level, true));
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcLength, byte[] dst) {
+        Deflater d = deflater.get();
+        d.reset();
+        d.setInput(src, 0, srcLength);
+        d.finish();
+        int length = d.deflate(dst, 0, dst.length);
+        return d.finished() ? length : -1;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcLength, byte[] dst, int dstLength) throws IOException {
+        Inflater i = inflater.get();
+        i.reset();
+        i.setInput(src, 0, srcLength);
+        try {
+            int length = i.inflate(dst, 0, dstLength);
+            if (length != dstLength || !i.finished()) {
+                throw new IOException("deflate frame has " + length + " bytes, expected " + dstLength);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt deflate frame: " + e.getMessage());
+        }
+    }
+}
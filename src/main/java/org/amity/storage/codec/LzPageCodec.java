@@ -0,0 +1,156 @@
+package org.amity.storage.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * LZ77 with a single hash probe per position and no entropy coding (LZ4 like block format)
+ * <p>
+ * Sequence : token (literal length 4 bits | match length - 4, 4 bits) | extra literal length bytes |
+ * literals | match offset (2, little endian) | extra match length bytes
+ * A length nibble of 15 is followed by bytes added to it till a byte below 255.
+ * Last sequence has only literals.
+ */
+public class LzPageCodec implements PageCodec {
+    private static final byte ID = 2;
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 12;
+    private static final int MAX_OFFSET = 65535;
+    // last bytes are always literals so match search can read 4 bytes ahead
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_SEARCH_LIMIT = 12;
+    private static final ThreadLocal<int[]> TABLE = ThreadLocal.withInitial(() -> new int[1 << HASH_BITS]);
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcLength, byte[] dst) {
+        int[] table = TABLE.get();
+        // position + 1, 0 is empty
+        Arrays.fill(table, 0);
+        int anchor = 0;
+        int ip = 0;
+        int op = 0;
+        while (ip < srcLength - MATCH_SEARCH_LIMIT) {
+            int sequence = readInt(src, ip);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[hash] - 1;
+            table[hash] = ip + 1;
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                ip++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < srcLength - LAST_LITERALS && src[ref + matchLength] == src[ip + matchLength]) {
+                matchLength++;
+            }
+            op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op);
+            if (op < 0) {
+                return -1;
+            }
+            ip += matchLength;
+            anchor = ip;
+        }
+        return writeSequence(src, anchor, srcLength - anchor, 0, 0, dst, op);
+    }
+
+    /**
+     * @param matchLength 0 for last literals only sequence
+     * @return position after sequence or -1 if it does not fit in dst
+     */
+    private static int writeSequence(byte[] src, int literalStart, int literalLength, int offset, int matchLength,
+                                     byte[] dst, int op) {
+        int extraMatch = matchLength == 0 ? 0 : matchLength - MIN_MATCH;
+        int needed = 1 + literalLength + literalLength / 255 + 1 + (matchLength == 0 ? 0 : 2 + extraMatch / 255 + 1);
+        if (op + needed > dst.length) {
+            return -1;
+        }
+        int token = op++;
+        dst[token] = (byte) (Math.min(literalLength, 15) << 4 | Math.min(extraMatch, 15));
+        op = writeLength(literalLength, dst, op);
+        System.arraycopy(src, literalStart, dst, op, literalLength);
+        op += literalLength;
+        if (matchLength == 0) {
+            return op;
+        }
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+        return writeLength(extraMatch, dst, op);
+    }
+
+    private static int writeLength(int length, byte[] dst, int op) {
+        if (length < 15) {
+            return op;
+        }
+        length -= 15;
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcLength, byte[] dst, int dstLength) throws IOException {
+        int ip = 0;
+        int op = 0;
+        try {
+            while (ip < srcLength) {
+                int token = src[ip++] & 0xFF;
+                int literalLength = token >>> 4;
+                if (literalLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                if (op + literalLength > dstLength) {
+                    throw new IOException("lz frame literals overflow " + dstLength + " bytes");
+                }
+                System.arraycopy(src, ip, dst, op, literalLength);
+                ip += literalLength;
+                op += literalLength;
+                if (ip >= srcLength) {
+                    break;
+                }
+                int offset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int ref = op - offset;
+                if (offset == 0 || ref < 0 || op + matchLength > dstLength) {
+                    throw new IOException("lz frame has invalid match at " + op);
+                }
+                if (offset >= matchLength) {
+                    System.arraycopy(dst, ref, dst, op, matchLength);
+                    op += matchLength;
+                } else {
+                    // byte by byte as match overlaps bytes it produces
+                    for (int k = 0; k < matchLength; k++) {
+                        dst[op++] = dst[ref++];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("truncated lz frame");
+        }
+        if (op != dstLength) {
+            throw new IOException("lz frame has " + op + " bytes, expected " + dstLength);
+        }
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,52 @@
+package org.amity.storage.codec;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a run of consecutive data pages into one frame of a compressed partition
+ * <p>
+ * DEFLATE - java.util.zip deflate, best ratio, slower
+ * LZ      - byte oriented LZ77 without entropy coding, fast on both sides
+ * Any other codec (e.g. LZ4 or Snappy binding) can be plugged with its own id.
+ */
+public interface PageCodec {
+    /**
+     * id kept in frame header so frames are decoded with the codec which wrote them, 0 is a stored (raw) frame
+     */
+    byte STORED = 0;
+    PageCodec DEFLATE = new DeflatePageCodec(Deflater.DEFAULT_COMPRESSION);
+    PageCodec LZ = new LzPageCodec();
+
+    byte id();
+
+    /**
+     * @param src       pages to compress
+     * @param srcLength bytes of src to compress
+     * @param dst       compressed bytes from index 0
+     * @return compressed length or -1 if it does not fit in dst
+     */
+    int compress(byte[] src, int srcLength, byte[] dst);
+
+    /**
+     * @param src       compressed bytes
+     * @param srcLength bytes of src to decompress
+     * @param dst       pages from index 0
+     * @param dstLength expected decompressed length
+     * @throws IOException if src is not a valid frame of dstLength bytes
+     */
+    void decompress(byte[] src, int srcLength, byte[] dst, int dstLength) throws IOException;
+
+    /**
+     * @return built in codec with given id or null
+     */
+    static PageCodec builtIn(byte id) {
+        if (id == DEFLATE.id()) {
+            return DEFLATE;
+        }
+        if (id == LZ.id()) {
+            return LZ;
+        }
+        return null;
+    }
+}
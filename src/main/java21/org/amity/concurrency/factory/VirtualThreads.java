@@ -0,0 +1,51 @@
+package org.amity.concurrency.factory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads of the running JDK
+ * <p>
+ * Java 21 version of this class, packed in META-INF/versions/21 of the multi-release jar.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if running JDK has virtual threads
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * @return true if thread is a virtual thread
+     */
+    public static boolean isVirtual(Thread thread) {
+        return thread.isVirtual();
+    }
+
+    /**
+     * @param namePrefix thread names are namePrefix-0, namePrefix-1 ...
+     * @return factory of virtual threads
+     */
+    public static ThreadFactory factory(String namePrefix) {
+        return Thread.ofVirtual()
+                .name(namePrefix + "-", 0)
+                .uncaughtExceptionHandler((t, e) -> System.err.printf(
+                        "Thread %s threw exception - %s%n", t.getName(),
+                        e.getMessage()))
+                .factory();
+    }
+
+    /**
+     * @param namePrefix thread names are namePrefix-0, namePrefix-1 ...
+     * @return executor starting a new virtual thread for each task
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(factory(namePrefix));
+    }
+}